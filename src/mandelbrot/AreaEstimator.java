@@ -0,0 +1,405 @@
+package mandelbrot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * Estimates the area of the Mandelbrot set by Monte Carlo sampling, with a
+ * confidence interval. The set is symmetric about the real axis, so only the
+ * upper half of the region (-2,0.5) x (0, 1.25i) is sampled and the result
+ * doubled.
+ *
+ * <p>
+ * The samples are stratified: the half region is cut into a STRATA x STRATA
+ * grid, and a round draws one sample at random from every cell. Rounds are
+ * independent, so the spread of their hit counts gives the standard error.
+ * Each round's random numbers are seeded by its number, so a run gives the
+ * same answer whatever the number of threads, and resumes exactly from a
+ * checkpoint.
+ *
+ * <p>
+ * A sample is in the set if it has not escaped |z| &gt; 2 after
+ * maxIterations steps. Two shortcuts decide most members without iterating
+ * that far: the main cardioid and period-2 bulb are recognised outright, and
+ * an orbit that comes back to a point it passed through earlier (Brent's
+ * cycle detection) is periodic and so never escapes. Samples still
+ * undecided at the limit are counted as members, so the estimate is a
+ * little high; the bias shrinks as maxIterations grows.
+ *
+ * <p>
+ * Worker threads claim rounds from a shared counter and add their results
+ * to LongAdders, so they never wait for one another.
+ */
+public class AreaEstimator {
+	/**
+	 * the half region sampled
+	 */
+	public static final double MIN_REAL = -2d, MAX_REAL = 0.5d, MAX_IMAGINARY = 1.25d;
+	/**
+	 * the half region is cut into STRATA x STRATA cells; a round samples
+	 * each once
+	 */
+	public static final int STRATA = 256;
+	/**
+	 * the area of the whole region, both halves
+	 */
+	private static final double REGION = 2 * (MAX_REAL - MIN_REAL) * MAX_IMAGINARY;
+	/**
+	 * an orbit within this of a point it passed through is taken as periodic
+	 */
+	private static final double PERIOD_EPSILON = 1e-13;
+	/**
+	 * identifies checkpoint files
+	 */
+	private static final int MAGIC = 0x41524541, VERSION = 1;
+	/**
+	 * how often main() prints the estimate and saves a checkpoint
+	 */
+	private static final int REPORT_MILLIS = 10000, CHECKPOINT_MILLIS = 60000;
+
+	private final int maxIterations;
+	private final long seed;
+	/**
+	 * the next round to be claimed
+	 */
+	private final AtomicLong nextRound = new AtomicLong();
+	/**
+	 * rounds finished, and the sums of their hits and squared hits
+	 */
+	private final LongAdder rounds = new LongAdder(), hits = new LongAdder(),
+			hitsSquared = new LongAdder();
+	/**
+	 * members found in this run, and those decided by each shortcut, for
+	 * reporting; not checkpointed
+	 */
+	private final LongAdder members = new LongAdder(), cardioid = new LongAdder(),
+			periodic = new LongAdder();
+	/**
+	 * the workers of the current run, or null when stopped
+	 */
+	private Worker[] workers;
+	private Thread[] threads;
+
+	/**
+	 * @param maxIterations samples that have not escaped after this many
+	 * steps are counted as in the set
+	 * @param seed the seed the rounds' random numbers are derived from
+	 */
+	public AreaEstimator(int maxIterations, long seed) {
+		this.maxIterations = maxIterations;
+		this.seed = seed;
+	}
+
+	/**
+	 * start sampling on some threads
+	 * @param threadCount how many worker threads
+	 */
+	public synchronized void start(int threadCount) {
+		Main.log(AreaEstimator.class.getSimpleName() + ".start() entered");
+
+		if (workers != null) return;
+		workers = new Worker[threadCount];
+		threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			workers[i] = new Worker();
+			threads[i] = new DaemonThreadFactory("area").newThread(workers[i]);
+			threads[i].start();
+		}
+	}
+
+	/**
+	 * stop the workers once they finish the round they are on, so that
+	 * every round claimed is counted
+	 */
+	public synchronized void stop() {
+		Main.log(AreaEstimator.class.getSimpleName() + ".stop() entered");
+
+		if (workers == null) return;
+		for (Worker w : workers) w.running = false;
+		for (Thread t : threads) {
+			boolean joined = false;
+			while (!joined) {
+				try {
+					t.join();
+					joined = true;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		workers = null;
+		threads = null;
+	}
+
+	/**
+	 * @return true while workers are sampling
+	 */
+	public synchronized boolean isRunning() {
+		return workers != null;
+	}
+
+	/**
+	 * @return the estimate from the rounds finished so far. While workers
+	 * run the sums may be read part way through adding a round, which
+	 * only matters for display.
+	 */
+	public Estimate getEstimate() {
+		return new Estimate(rounds.sum(), hits.sum(), hitsSquared.sum(),
+				members.sum(), cardioid.sum(), periodic.sum());
+	}
+
+	/**
+	 * write the sums to a file, replacing it only once the new checkpoint is
+	 * complete. A running estimate is paused while the file is written.
+	 * @param file where to save
+	 * @throws IOException if the file cannot be written
+	 */
+	public synchronized void save(File file) throws IOException {
+		Main.log(AreaEstimator.class.getSimpleName() + ".save() entered");
+
+		int running = workers == null ? 0 : workers.length;
+		stop();
+		try {
+			File temp = new File(file.getPath() + ".tmp");
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(temp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(STRATA);
+				out.writeInt(maxIterations);
+				out.writeLong(seed);
+				out.writeLong(rounds.sum());
+				out.writeLong(hits.sum());
+				out.writeLong(hitsSquared.sum());
+			} finally {
+				out.close();
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			if (running > 0) start(running);
+		}
+	}
+
+	/**
+	 * carry on from a checkpoint. The estimate must be stopped.
+	 * @param file a checkpoint written by save()
+	 * @throws IOException if the file cannot be read or was written with
+	 * different settings
+	 */
+	public synchronized void load(File file) throws IOException {
+		Main.log(AreaEstimator.class.getSimpleName() + ".load() entered");
+
+		if (workers != null) throw new IllegalStateException("stop() before load()");
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException(file + " is not an area checkpoint");
+			if (in.readInt() != STRATA || in.readInt() != maxIterations
+					|| in.readLong() != seed)
+				throw new IOException(file + " was saved with different settings");
+			long savedRounds = in.readLong(), savedHits = in.readLong(),
+					savedSquares = in.readLong();
+			rounds.reset();
+			rounds.add(savedRounds);
+			hits.reset();
+			hits.add(savedHits);
+			hitsSquared.reset();
+			hitsSquared.add(savedSquares);
+			nextRound.set(savedRounds);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return true if c is taken to be in the set
+	 */
+	private boolean inSet(double cReal, double cImaginary) {
+		if (ComplexValue.inCardioidOrBulb(cReal, cImaginary)) {
+			cardioid.increment();
+			return true;
+		}
+		double zReal = 0d, zImaginary = 0d, zReal2 = 0d, zImaginary2 = 0d;
+		double savedReal = 0d, savedImaginary = 0d;
+		int sinceSaved = 0, saveEvery = 8;
+		for (int count = 0; count < maxIterations; count++) {
+			zImaginary = 2 * zReal * zImaginary + cImaginary;
+			zReal = zReal2 - zImaginary2 + cReal;
+			zReal2 = zReal * zReal;
+			zImaginary2 = zImaginary * zImaginary;
+			if (zReal2 + zImaginary2 > 4d) return false;
+			if (Math.abs(zReal - savedReal) < PERIOD_EPSILON
+					&& Math.abs(zImaginary - savedImaginary) < PERIOD_EPSILON) {
+				periodic.increment();
+				return true;
+			}
+			// compare against points saved ever further apart, so a cycle
+			// of any length is caught once it fits between saves
+			if (++sinceSaved == saveEvery) {
+				savedReal = zReal;
+				savedImaginary = zImaginary;
+				sinceSaved = 0;
+				saveEvery *= 2;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * claims rounds and samples them until stopped
+	 */
+	private final class Worker implements Runnable {
+		private volatile boolean running = true;
+
+		@Override
+		public void run() {
+			double cellReal = (MAX_REAL - MIN_REAL) / STRATA, cellImaginary = MAX_IMAGINARY / STRATA;
+			while (running) {
+				long round = nextRound.getAndIncrement();
+				SplittableRandom random = new SplittableRandom(seed ^ (round * 0x9E3779B97F4A7C15L));
+				long roundHits = 0;
+				for (int j = 0; j < STRATA; j++) {
+					for (int i = 0; i < STRATA; i++) {
+						double cReal = MIN_REAL + (i + random.nextDouble()) * cellReal;
+						double cImaginary = (j + random.nextDouble()) * cellImaginary;
+						if (inSet(cReal, cImaginary)) roundHits++;
+					}
+				}
+				hits.add(roundHits);
+				hitsSquared.add(roundHits * roundHits);
+				rounds.increment();
+				members.add(roundHits);
+			}
+		}
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * the area estimated from some rounds, and its standard error
+	 */
+	public static final class Estimate {
+		private final long rounds, hits, hitsSquared, members, cardioid, periodic;
+
+		Estimate(long rounds, long hits, long hitsSquared, long members, long cardioid,
+				long periodic) {
+			this.rounds = rounds;
+			this.hits = hits;
+			this.hitsSquared = hitsSquared;
+			this.members = members;
+			this.cardioid = cardioid;
+			this.periodic = periodic;
+		}
+
+		/**
+		 * @return how many samples were drawn
+		 */
+		public long getSamples() {
+			return rounds * STRATA * STRATA;
+		}
+
+		/**
+		 * @return the estimated area
+		 */
+		public double getArea() {
+			if (rounds == 0) return Double.NaN;
+			return REGION * hits / ((double) rounds * STRATA * STRATA);
+		}
+
+		/**
+		 * @return the standard error of the estimate, from the spread of
+		 * the rounds' hit counts
+		 */
+		public double getStandardError() {
+			if (rounds < 2) return Double.NaN;
+			double mean = (double) hits / rounds;
+			double variance = (hitsSquared - rounds * mean * mean) / (rounds - 1);
+			return REGION / (STRATA * STRATA) * Math.sqrt(Math.max(0d, variance) / rounds);
+		}
+
+		/**
+		 * @return the fraction of the members found since starting or
+		 * loading that were decided by each shortcut: the cardioid and
+		 * bulb test, then cycle detection
+		 */
+		public double[] getShortcutFractions() {
+			double found = Math.max(1d, members);
+			return new double[] { cardioid / found, periodic / found };
+		}
+
+		@Override
+		public String toString() {
+			double[] shortcuts = getShortcutFractions();
+			return String.format("%,d samples: area %.7f +/- %.7f (95%%); "
+					+ "members decided by cardioid/bulb %.1f%%, by cycle detection %.1f%%, "
+					+ "undecided at the limit %.3f%%",
+					getSamples(), getArea(), 1.96d * getStandardError(),
+					100d * shortcuts[0], 100d * shortcuts[1],
+					Math.max(0d, 100d * (1d - shortcuts[0] - shortcuts[1])));
+		}
+	}
+
+	/**
+	 * estimate the area until stopped, printing the running estimate and
+	 * saving a checkpoint every so often and on exit
+	 * @param args optionally a checkpoint file to resume from and save to,
+	 * then the iteration limit, 50000 if not given
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		final File checkpoint = args.length > 0 ? new File(args[0]) : null;
+		int maxIterations = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+		final AreaEstimator estimator = new AreaEstimator(maxIterations, 1L);
+		if (checkpoint != null && checkpoint.exists()) estimator.load(checkpoint);
+		estimator.start(Runtime.getRuntime().availableProcessors());
+		if (checkpoint != null) {
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					estimator.stop();
+					save(estimator, checkpoint);
+				}
+			}));
+		}
+		long lastSamples = estimator.getEstimate().getSamples(), lastTime = System.nanoTime();
+		for (int report = 1; ; report++) {
+			Thread.sleep(REPORT_MILLIS);
+			Estimate estimate = estimator.getEstimate();
+			long now = System.nanoTime();
+			System.out.printf("%s; %.2f M samples/s%n", estimate,
+					(estimate.getSamples() - lastSamples) * 1e3 / (now - lastTime));
+			lastSamples = estimate.getSamples();
+			lastTime = now;
+			if (checkpoint != null && report % (CHECKPOINT_MILLIS / REPORT_MILLIS) == 0)
+				save(estimator, checkpoint);
+		}
+	}
+
+	/**
+	 * save a checkpoint, reporting rather than throwing failures
+	 */
+	private static void save(AreaEstimator estimator, File checkpoint) {
+		try {
+			estimator.save(checkpoint);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("Error writing checkpoint!");
+		}
+	}
+}
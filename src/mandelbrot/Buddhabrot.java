@@ -0,0 +1,324 @@
+package mandelbrot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.SplittableRandom;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * Accumulates a Buddhabrot: numbers c are picked at random, and for each c
+ * whose orbit under z = z^2 + c escapes, every point the orbit passes through
+ * is counted in a density histogram of the view (-2,1) along the real axis
+ * and (-1.5i, 1.5i) along the imaginary axis.
+ *
+ * <p>
+ * Every worker thread draws its own samples and counts into its own
+ * histogram, so the threads never share a counter; the histograms are only
+ * added together when a snapshot is taken. Numbers in the main cardioid or
+ * the period-2 bulb never escape and are rejected before being iterated.
+ *
+ * <p>
+ * Snapshots can be taken while the workers run, for progressive display.
+ * A checkpoint saves the summed histogram and the number of samples drawn so
+ * that a long run can be stopped and later resumed.
+ */
+public class Buddhabrot {
+	/**
+	 * the region of the complex plane the histogram covers
+	 */
+	public static final double MIN_REAL = -2d, MAX_REAL = 1d,
+			MIN_IMAGINARY = -1.5d, MAX_IMAGINARY = 1.5d;
+	/**
+	 * samples are drawn from the square of this half-width about 0; outside
+	 * it every orbit escapes at once
+	 */
+	private static final double SAMPLE_EXTENT = 2d;
+	/**
+	 * orbits escape when |z|^2 reaches this
+	 */
+	private static final double ESCAPE = 4d;
+	/**
+	 * orbits escaping in fewer steps than this are not counted; they only
+	 * add an even haze
+	 */
+	private static final int MIN_ORBIT = 10;
+	/**
+	 * each worker draws this many samples between checks for stop()
+	 */
+	private static final int BATCH = 1 << 14;
+	/**
+	 * identifies checkpoint files
+	 */
+	private static final int MAGIC = 0x42554448, VERSION = 1;
+
+	private final int width, height, maxIterations;
+	/**
+	 * counts and samples from earlier runs, loaded from a checkpoint or
+	 * folded in when workers are stopped
+	 */
+	private final long[] base;
+	private long baseSamples;
+	/**
+	 * the workers of the current run, or null when stopped
+	 */
+	private Worker[] workers;
+	private Thread[] threads;
+	/**
+	 * held while a checkpoint is written, so two saves never share the
+	 * temporary file
+	 */
+	private final Object saving = new Object();
+
+	/**
+	 * @param width columns in the histogram
+	 * @param height rows in the histogram
+	 * @param maxIterations orbits that have not escaped after this many
+	 * steps are taken to be in the set and not counted
+	 */
+	public Buddhabrot(int width, int height, int maxIterations) {
+		this.width = width;
+		this.height = height;
+		this.maxIterations = maxIterations;
+		base = new long[width * height];
+	}
+
+	/**
+	 * start drawing samples on some threads
+	 * @param threadCount how many worker threads
+	 */
+	public synchronized void start(int threadCount) {
+		Main.log(Buddhabrot.class.getSimpleName() + ".start() entered");
+
+		if (workers != null) return;
+		workers = new Worker[threadCount];
+		threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			workers[i] = new Worker();
+			threads[i] = new DaemonThreadFactory("buddhabrot").newThread(workers[i]);
+			threads[i].setPriority(Thread.MIN_PRIORITY);
+			threads[i].start();
+		}
+	}
+
+	/**
+	 * stop the workers once they finish their current batch, and fold their
+	 * histograms into the totals
+	 */
+	public synchronized void stop() {
+		Main.log(Buddhabrot.class.getSimpleName() + ".stop() entered");
+
+		if (workers == null) return;
+		for (Worker w : workers) w.running = false;
+		for (Thread t : threads) {
+			boolean joined = false;
+			while (!joined) {
+				try {
+					t.join();
+					joined = true;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		for (Worker w : workers) {
+			for (int i = 0; i < base.length; i++) base[i] += w.histogram[i];
+			baseSamples += w.samples;
+		}
+		workers = null;
+		threads = null;
+	}
+
+	/**
+	 * @return true while workers are drawing samples
+	 */
+	public synchronized boolean isRunning() {
+		return workers != null;
+	}
+
+	/**
+	 * @return how many samples have been drawn in all
+	 */
+	public synchronized long getSamples() {
+		long samples = baseSamples;
+		if (workers != null) {
+			for (Worker w : workers) samples += w.samples;
+		}
+		return samples;
+	}
+
+	/**
+	 * add up the histograms. While workers run the result is a little
+	 * behind, which does not matter for display.
+	 * @return how often each pixel has been visited, row by row
+	 */
+	public synchronized long[] snapshot() {
+		long[] total = base.clone();
+		if (workers != null) {
+			for (Worker w : workers) {
+				long[] h = w.histogram;
+				for (int i = 0; i < total.length; i++) total[i] += h[i];
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * write the histogram and sample count to a file, replacing it only once
+	 * the new checkpoint is complete. A running accumulation is paused only
+	 * while the workers' histograms are folded into a copy; the copy is
+	 * written while they run on, and snapshots can be taken meanwhile.
+	 * @param file where to save
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(File file) throws IOException {
+		Main.log(Buddhabrot.class.getSimpleName() + ".save() entered");
+
+		long[] counts;
+		long samples;
+		synchronized (this) {
+			int running = workers == null ? 0 : workers.length;
+			stop();
+			counts = base.clone();
+			samples = baseSamples;
+			if (running > 0) start(running);
+		}
+		synchronized (saving) {
+			File temp = new File(file.getPath() + ".tmp");
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					new GZIPOutputStream(new FileOutputStream(temp))));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(width);
+				out.writeInt(height);
+				out.writeInt(maxIterations);
+				out.writeLong(samples);
+				for (long count : counts) out.writeLong(count);
+			} finally {
+				out.close();
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	/**
+	 * replace the totals with those of a checkpoint, to resume a run. The
+	 * accumulation must be stopped.
+	 * @param file a checkpoint written by save()
+	 * @throws IOException if the file cannot be read or was written for a
+	 * different size or iteration limit
+	 */
+	public synchronized void load(File file) throws IOException {
+		Main.log(Buddhabrot.class.getSimpleName() + ".load() entered");
+
+		if (workers != null) throw new IllegalStateException("stop() before load()");
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(file))));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException(file + " is not a Buddhabrot checkpoint");
+			if (in.readInt() != width || in.readInt() != height
+					|| in.readInt() != maxIterations)
+				throw new IOException(file + " was saved with different settings");
+			long samples = in.readLong();
+			long[] counts = new long[base.length];
+			for (int i = 0; i < counts.length; i++) counts[i] = in.readLong();
+			System.arraycopy(counts, 0, base, 0, base.length);
+			baseSamples = samples;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return columns in the histogram
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return rows in the histogram
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * draws samples into a histogram of its own
+	 */
+	private final class Worker implements Runnable {
+		private final long[] histogram = new long[width * height];
+		/**
+		 * written only by this worker's thread
+		 */
+		private volatile long samples;
+		private volatile boolean running = true;
+
+		@Override
+		public void run() {
+			SplittableRandom random = new SplittableRandom();
+			double realScale = width / (MAX_REAL - MIN_REAL);
+			double imaginaryScale = height / (MAX_IMAGINARY - MIN_IMAGINARY);
+			while (running) {
+				for (int n = 0; n < BATCH; n++) {
+					double cReal = random.nextDouble(-SAMPLE_EXTENT, SAMPLE_EXTENT);
+					double cImaginary = random.nextDouble(-SAMPLE_EXTENT, SAMPLE_EXTENT);
+					if (ComplexValue.inCardioidOrBulb(cReal, cImaginary)) continue;
+					if (escapeTime(cReal, cImaginary) >= MIN_ORBIT)
+						trace(cReal, cImaginary, realScale, imaginaryScale);
+				}
+				samples += BATCH;
+			}
+		}
+
+		/**
+		 * @return the step at which the orbit of c escapes, or -1 if it has
+		 * not escaped within maxIterations
+		 */
+		private int escapeTime(double cReal, double cImaginary) {
+			double zReal = 0d, zImaginary = 0d, zReal2 = 0d, zImaginary2 = 0d;
+			for (int count = 0; count < maxIterations; count++) {
+				zImaginary = 2 * zReal * zImaginary + cImaginary;
+				zReal = zReal2 - zImaginary2 + cReal;
+				zReal2 = zReal * zReal;
+				zImaginary2 = zImaginary * zImaginary;
+				if (zReal2 + zImaginary2 >= ESCAPE) return count + 1;
+			}
+			return -1;
+		}
+
+		/**
+		 * run the orbit of c again, counting each point of it that falls
+		 * in the histogram
+		 */
+		private void trace(double cReal, double cImaginary, double realScale,
+				double imaginaryScale) {
+			double zReal = 0d, zImaginary = 0d, zReal2 = 0d, zImaginary2 = 0d;
+			while (zReal2 + zImaginary2 < ESCAPE) {
+				zImaginary = 2 * zReal * zImaginary + cImaginary;
+				zReal = zReal2 - zImaginary2 + cReal;
+				zReal2 = zReal * zReal;
+				zImaginary2 = zImaginary * zImaginary;
+				double x = (zReal - MIN_REAL) * realScale;
+				double y = (zImaginary - MIN_IMAGINARY) * imaginaryScale;
+				if (x >= 0 && x < width && y >= 0 && y < height)
+					histogram[(int) y * width + (int) x]++;
+			}
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package mandelbrot;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * A JPanel that shows a Buddhabrot as it accumulates, redrawn from a fresh
+ * snapshot every half second. Brightness goes with the square root of the
+ * density so that faint orbits stay visible next to the bright ones.
+ *
+ * <p>
+ * Run on its own, it opens a window and accumulates until the window is
+ * closed. If given a checkpoint file it resumes from it when it exists, saves
+ * to it every minute on a thread of its own, so the window does not wait on
+ * the disk, and saves once more on closing.
+ */
+@SuppressWarnings("serial")
+public class BuddhabrotView extends JPanel {
+	/**
+	 * the image is this many pixels on a side
+	 */
+	public static final int SIZE = 600;
+	/**
+	 * orbits longer than this are taken to be in the set
+	 */
+	public static final int MAX_ITERATIONS = 1000;
+	/**
+	 * how often the image is redrawn and a checkpoint saved
+	 */
+	private static final int REFRESH_MILLIS = 500, CHECKPOINT_MILLIS = 60000;
+	/**
+	 * saves the checkpoints while the window is open
+	 */
+	private static final ScheduledExecutorService checkpointer =
+			Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("checkpoint"));
+
+	private Buddhabrot buddhabrot;
+	/**
+	 * the image drawn from the latest snapshot
+	 */
+	private BufferedImage image;
+
+	/**
+	 * @param buddhabrot the accumulation to show
+	 */
+	public BuddhabrotView(Buddhabrot buddhabrot) {
+		super();
+		this.buddhabrot = buddhabrot;
+		image = new BufferedImage(buddhabrot.getWidth(), buddhabrot.getHeight(),
+				BufferedImage.TYPE_INT_RGB);
+
+		new Timer(REFRESH_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				refresh();
+			}
+		}).start();
+	}
+
+	/**
+	 * @see javax.swing.JComponent#getPreferredSize()
+	 */
+	public Dimension getPreferredSize() {
+		return new Dimension(image.getWidth(), image.getHeight());
+	}
+
+	/**
+	 * draw the image again from a new snapshot
+	 */
+	private void refresh() {
+		long[] counts = buddhabrot.snapshot();
+		long max = 1;
+		for (long c : counts) max = Math.max(max, c);
+
+		double scale = 255d / Math.sqrt(max);
+		int[] rgb = new int[counts.length];
+		for (int i = 0; i < counts.length; i++) {
+			int v = (int) (Math.sqrt(counts[i]) * scale);
+			rgb[i] = (v << 16) | (v << 8) | v;
+		}
+		image.setRGB(0, 0, image.getWidth(), image.getHeight(), rgb, 0, image.getWidth());
+		repaint();
+	}
+
+	/**
+	 * @see javax.swing.JComponent#paint(java.awt.Graphics)
+	 */
+	@Override
+	public void paint(Graphics g) {
+		super.paint(g);
+		g.drawImage(image, 0, 0, null);
+	}
+
+	/**
+	 * Open a window that accumulates a Buddhabrot.
+	 *
+	 * @param args optionally, a checkpoint file to resume from and save to
+	 */
+	public static void main(String[] args) throws IOException {
+		final Buddhabrot buddhabrot = new Buddhabrot(SIZE, SIZE, MAX_ITERATIONS);
+		final File checkpoint = args.length > 0 ? new File(args[0]) : null;
+		if (checkpoint != null && checkpoint.exists()) buddhabrot.load(checkpoint);
+		buddhabrot.start(Runtime.getRuntime().availableProcessors());
+
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				final JFrame frame = new JFrame("Buddhabrot");
+				frame.add(new BuddhabrotView(buddhabrot));
+				frame.pack();
+				frame.setLocationRelativeTo(null);
+				frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+				if (checkpoint != null) {
+					checkpointer.scheduleWithFixedDelay(new Runnable() {
+						@Override
+						public void run() {
+							save(buddhabrot, checkpoint);
+						}
+					}, CHECKPOINT_MILLIS, CHECKPOINT_MILLIS, TimeUnit.MILLISECONDS);
+					frame.addWindowListener(new WindowAdapter() {
+						@Override
+						public void windowClosing(WindowEvent e) {
+							// the program exits next, so the last save is waited for
+							checkpointer.shutdown();
+							save(buddhabrot, checkpoint);
+						}
+					});
+				}
+				frame.setVisible(true);
+			}
+		});
+	}
+
+	/**
+	 * save a checkpoint, reporting rather than throwing failures
+	 */
+	private static void save(Buddhabrot buddhabrot, File checkpoint) {
+		try {
+			buddhabrot.save(checkpoint);
+			Main.log("checkpoint saved after " + buddhabrot.getSamples() + " samples");
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("Error writing checkpoint!");
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package mandelbrot;
+
+import java.awt.Font;
+
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * A panel that holds the list to choose the frame budget: how long each
+ * navigation may take before something of the new view is shown. Below it
+ * is how long the last render took, and how well it used the cores.
+ *
+ */
+@SuppressWarnings("serial")
+public class BudgetPanel extends JPanel {
+	/**
+	 * the budgets offered, in milliseconds; 0 renders every view in full
+	 */
+	private static final int[] BUDGETS = { 0, 25, 50, 100, 200 };
+	/**
+	 * list to choose the budget
+	 */
+	private JComboBox<String> budget;
+	/**
+	 * how the last render went
+	 */
+	private JLabel stats;
+
+	/**
+	 * create the list
+	 */
+	public BudgetPanel(Main parent) {
+		super();
+		setBounds(ComplexSet.COLS + 2 * ComplexImage.HORIZ_OFFSET, 610,
+				JuliaPreview.SIZE, 60); // positions and sizes this control
+		String[] names = new String[BUDGETS.length];
+		for (int i = 0; i < BUDGETS.length; i++) {
+			names[i] = BUDGETS[i] == 0 ? "Render in full" : "Budget " + BUDGETS[i] + " ms";
+		}
+		budget = new JComboBox<String>(names);
+		budget.setActionCommand("budget");
+		budget.addActionListener(parent);
+		add(budget);
+
+		stats = new JLabel(" ");
+		stats.setFont(new Font("Dialog", Font.PLAIN, 11));
+		add(stats);
+	}
+
+	/**
+	 * show how a render went
+	 * @param renderStats the render's statistics, or null if it was not
+	 * rendered here
+	 */
+	public void showRenderStats(TileScheduler.RenderStats renderStats) {
+		if (renderStats == null) {
+			stats.setText(" ");
+			return;
+		}
+		stats.setText(String.format("Rendered in %.0f ms, %.0f%% parallel",
+				renderStats.getElapsedNanos() / 1e6, 100d * renderStats.getEfficiency()));
+	}
+
+	/**
+	 * @return the budget chosen in the list, in milliseconds, or 0 for none
+	 */
+	public int getBudgetMillis() {
+		return BUDGETS[budget.getSelectedIndex()];
+	}
+}
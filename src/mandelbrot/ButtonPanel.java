@@ -1,6 +1,7 @@
 package mandelbrot;
 
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JPanel;
 
 /**
@@ -32,13 +33,17 @@ public class ButtonPanel extends JPanel {
 	 * button to zoom the currently displayed view
 	 */
 	private JButton zoom;
+	/**
+	 * list to choose the formula the image is rendered with
+	 */
+	private JComboBox<Formula> formula;
 
 	/**
 	 * create buttons
 	 */
 	public ButtonPanel(Main parent) {
 		super();
-		setBounds(75, 620, 450, 50); // positions and sizes this control
+		setBounds(5, 620, 600, 50); // positions and sizes this control
 		exit = new JButton("Exit");
 		exit.setActionCommand("exit");
 		exit.addActionListener(parent);
@@ -63,5 +68,25 @@ public class ButtonPanel extends JPanel {
 		zoom.setActionCommand("zoom");
 		zoom.addActionListener(parent);
 		add(zoom);
+
+		formula = new JComboBox<Formula>(Formula.standard());
+		formula.setActionCommand("formula");
+		formula.addActionListener(parent);
+		add(formula);
+	}
+
+	/**
+	 * @return the formula chosen in the list
+	 */
+	public Formula getFormula() {
+		return (Formula) formula.getSelectedItem();
+	}
+
+	/**
+	 * show a formula as chosen, as when going back to a view made with it
+	 * @param f the formula to show
+	 */
+	public void showFormula(Formula f) {
+		formula.setSelectedItem(f);
 	}
 }
@@ -0,0 +1,108 @@
+package mandelbrot;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * Runs tasks one at a time on a single background thread, keeping only the
+ * most recently submitted task waiting. A task submitted while another waits
+ * replaces it, so work for stale mouse positions or views is dropped rather
+ * than queued behind the latest one.
+ *
+ * <p>
+ * A running task can ask whether it has been superseded, to give up early,
+ * or wait a while to see whether it will be.
+ */
+final class CoalescingExecutor {
+	/**
+	 * guards pending and scheduled
+	 */
+	private final Object lock = new Object();
+	/**
+	 * the task waiting to run, or null
+	 */
+	private Runnable pending;
+	/**
+	 * true while the worker has been asked to drain the pending task
+	 */
+	private boolean scheduled;
+	private final ExecutorService worker;
+	private final Runnable drain = new Runnable() {
+		@Override
+		public void run() {
+			while (true) {
+				Runnable task;
+				synchronized (lock) {
+					task = pending;
+					pending = null;
+					if (task == null) {
+						scheduled = false;
+						return;
+					}
+				}
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	};
+
+	/**
+	 * @param name the name of the worker thread
+	 * @param priority the priority the worker thread runs at
+	 */
+	CoalescingExecutor(String name, int priority) {
+		worker = Executors.newSingleThreadExecutor(new DaemonThreadFactory(name, priority));
+	}
+
+	/**
+	 * run a task after the one running now, in place of any task waiting
+	 * @param task the task to run
+	 */
+	void submit(Runnable task) {
+		synchronized (lock) {
+			pending = task;
+			lock.notifyAll();
+			if (!scheduled) {
+				scheduled = true;
+				worker.execute(drain);
+			}
+		}
+	}
+
+	/**
+	 * @return true if a newer task is waiting; the running task is stale
+	 */
+	boolean isSuperseded() {
+		synchronized (lock) {
+			return pending != null;
+		}
+	}
+
+	/**
+	 * wait until a newer task is submitted or the time runs out
+	 * @param millis how long to wait
+	 * @return true if a newer task is waiting
+	 */
+	boolean awaitSuperseded(long millis) {
+		long deadline = System.currentTimeMillis() + millis;
+		synchronized (lock) {
+			long remaining = millis;
+			while (pending == null && remaining > 0) {
+				try {
+					lock.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				remaining = deadline - System.currentTimeMillis();
+			}
+			return pending != null;
+		}
+	}
+}
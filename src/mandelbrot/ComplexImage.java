@@ -1,31 +1,105 @@
 package mandelbrot;
 
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 
 import javax.imageio.ImageIO;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.event.MouseInputListener;
 
 import mandelbrot.HistoryStack.HistoryStackException;
+import mandelbrot.ImagePyramid.Level;
+import mandelbrot.SpeculativeRenderer.Rendered;
 
 /**
  * @author John Bannister <john_bannister@my.uri.edu>
  * a JPanel that displays the bitmap of the complex plane and listens for
  * MouseEvents that indicate a new image should be created
+ * <p>
+ * Dragging pans the view and the mouse wheel zooms about the cursor. While
+ * such a gesture is under way the last bitmap is moved and scaled to follow
+ * it, and a coarse preview of the new view is rendered in the background to
+ * fill the parts the old bitmap does not cover. When the gesture ends one
+ * full render makes a new ComplexSet and pushes it onto the history.
+ * Dragging with the right button, or with Shift held, instead selects a
+ * rectangle that the view zooms straight into.
+ * <p>
+ * While the mouse rests over the image the orbit of the number under it is
+ * drawn over the image. Orbits are traced on a worker thread that only ever
+ * traces the newest position.
+ * <p>
+ * The bitmaps of the views shown are kept, within a memory cap, at every
+ * scale they were shown at. A view with no bitmap yet, mid-gesture or while
+ * its render runs, is pieced together from the kept ones nearest its scale,
+ * so zooming back out or returning to a region seen before shows at once.
+ * <p>
+ * Given a frame budget, a QualityController decides for each new view
+ * whether its full render would take longer; if so a quick coarse frame is
+ * rendered and shown first, within the budget, and the full render
+ * replaces it when done.
  */
 @SuppressWarnings("serial")
-public class ComplexImage extends JPanel implements MouseInputListener {
+public class ComplexImage extends JPanel implements MouseInputListener,
+		MouseWheelListener {
 	/**
 	 * this image is these numbers of pixels from the left and top of the
 	 * parent control
 	 */
 	public final static int HORIZ_OFFSET = 5,
 			VERT_OFFSET = 5;
+	/**
+	 * arbitrary values to present a "nice looking" graph on startup
+	 */
+	static final double HOME_ZOOM = 250d, HOME_ZOOM_STEP = 100;
+	/**
+	 * each notch of the mouse wheel zooms by this factor
+	 */
+	private static final double WHEEL_ZOOM_FACTOR = 1.25d;
+	/**
+	 * a wheel gesture is over when the wheel has been still this long
+	 */
+	private static final int WHEEL_SETTLE_MILLIS = 300;
+	/**
+	 * the display is refreshed with background previews at most this often
+	 */
+	private static final int FRAME_MILLIS = 16;
+	/**
+	 * previews compute one pixel in each PREVIEW_STEP x PREVIEW_STEP block
+	 */
+	private static final int PREVIEW_STEP = 2;
+	/**
+	 * the mouse must move this many pixels with a button down to start a drag
+	 */
+	private static final int DRAG_THRESHOLD = 3;
+	/**
+	 * the view offsets are whole pixels held in an int; views needing
+	 * offsets beyond this are refused
+	 */
+	private static final double MAX_OFFSET = Integer.MAX_VALUE / 2;
+	/**
+	 * orbit points further off the image than this are drawn at this
+	 * distance, so the pixel coordinates stay small
+	 */
+	private static final double ORBIT_CLAMP = 10000d;
+	/**
+	 * the bitmaps of views already shown may take this many bytes
+	 */
+	private static final long PYRAMID_BYTES = 48L << 20;
 	/**
 	 * instance of a HistoryStack that saves the history of ComplexSets
 	 */
@@ -49,10 +123,85 @@ public class ComplexImage extends JPanel implements MouseInputListener {
 	private double zoom, zoomStep;
 	private static double zoomFactor;
 	private int xValue, yValue;
+	/**
+	 * the formula new views are rendered with
+	 */
+	private Formula formula;
 	/**
 	 * a handle to the parent window
 	 */
 	private Main parent;
+	/**
+	 * where a drag started, and the view offsets at that moment
+	 */
+	private int dragStartX, dragStartY, dragStartXValue, dragStartYValue;
+	/**
+	 * true while the mouse is being dragged; justDragged swallows the click
+	 * that some platforms report at the end of a drag
+	 */
+	private boolean dragging, justDragged;
+	/**
+	 * true while a rectangle to zoom into is being dragged out, from
+	 * (dragStartX, dragStartY) to (selectEndX, selectEndY)
+	 */
+	private boolean selecting;
+	private int selectEndX, selectEndY;
+	/**
+	 * settles a wheel gesture into a full render
+	 */
+	private Timer wheelTimer;
+	/**
+	 * refreshes the display with background previews during a gesture
+	 */
+	private Timer frameTimer;
+	/**
+	 * renders previews off the event dispatch thread, the latest view only
+	 */
+	private CoalescingExecutor previewWorker;
+	/**
+	 * renders the views that go on the history, off the event dispatch
+	 * thread so the window stays live meanwhile
+	 */
+	private CoalescingExecutor foreground;
+	/**
+	 * counts foreground renders asked for, and the last one shown, so that
+	 * a render overtaken by a newer view is dropped when it finishes
+	 */
+	private int renderGeneration, shownGeneration;
+	/**
+	 * the newest finished preview, and the one currently on screen
+	 */
+	private volatile Preview latestPreview;
+	private Preview shownPreview;
+	/**
+	 * pre-renders the views likely to be asked for next
+	 */
+	private SpeculativeRenderer speculative;
+	/**
+	 * counts gestures, so previews of a finished gesture are thrown away
+	 */
+	private volatile int gesture;
+	/**
+	 * false until the first frame has been painted
+	 */
+	private boolean painted;
+	/**
+	 * traces orbits off the event dispatch thread, the latest position only
+	 */
+	private CoalescingExecutor orbitWorker;
+	/**
+	 * the newest traced orbit, and whether the mouse is over the image
+	 */
+	private volatile Orbit orbit;
+	private boolean probing;
+	/**
+	 * the bitmaps of the views already shown
+	 */
+	private ImagePyramid pyramid;
+	/**
+	 * decides how to render within the frame budget, and measures renders
+	 */
+	private QualityController quality;
 
 	/**
 	 * set fields to default values and setup initial view
@@ -64,19 +213,44 @@ public class ComplexImage extends JPanel implements MouseInputListener {
 		this.parent = parent;
 		addMouseMotionListener(this);
 		addMouseListener(this);
+		addMouseWheelListener(this);
 
-		zoom = 250d; // arbitrary values to present a "nice looking" graph
-		zoomStep = 100;
+		zoom = HOME_ZOOM;
+		zoomStep = HOME_ZOOM_STEP;
 		zoomFactor =2.0d;
 		xValue = 0;
 		yValue = 0;
+		formula = Formula.MANDELBROT;
 
 		history = new HistoryStack();
-		theSet = new ComplexSet(zoom, zoomStep, xValue, yValue);
+		theSet = HomeView.homeSet(zoom, zoomStep, xValue, yValue, formula);
 		defaultSet = theSet;
 		history.push(theSet);
+		parent.historyChanged(history);
 
+		pyramid = new ImagePyramid(PYRAMID_BYTES);
+		quality = new QualityController();
 		fillImage();
+
+		previewWorker = new CoalescingExecutor("preview", Thread.NORM_PRIORITY);
+		foreground = new CoalescingExecutor("foreground", Thread.NORM_PRIORITY);
+		orbitWorker = new CoalescingExecutor("orbit", Thread.NORM_PRIORITY);
+		frameTimer = new Timer(FRAME_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				showLatestPreview();
+			}
+		});
+		wheelTimer = new Timer(WHEEL_SETTLE_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				endGesture();
+			}
+		});
+		wheelTimer.setRepeats(false);
+
+		// speculation starts once the first frame is up; see paint()
+		speculative = new SpeculativeRenderer();
 	}
 
 	/**
@@ -86,13 +260,171 @@ public class ComplexImage extends JPanel implements MouseInputListener {
 	private void fillImage() {
 		Main.log(ComplexImage.class.getSimpleName() + ".fillImage() entered");
 
-		screen = new BufferedImage(600, 600, BufferedImage.TYPE_INT_RGB);
-		ComplexValue[][] theValues = theSet.getComplexSet();
-		for (int y = 0; y < ComplexSet.ROWS; y++) {
-			for (int x = 0; x < ComplexSet.COLS; x++) {
-				screen.setRGB(x, y, theValues[x][y].getColor());
+		screen = pyramid.imageOf(theSet);
+		if (screen == null) screen = imageOf(theSet);
+		pyramid.add(theSet, screen);
+	}
+
+	/**
+	 * @param set a ComplexSet
+	 * @return a new bitmap of the set's colors
+	 */
+	static BufferedImage imageOf(ComplexSet set) {
+		BufferedImage image = new BufferedImage(600, 600, BufferedImage.TYPE_INT_RGB);
+		int[] orders = set.getOrders();
+		int[] rgb = new int[orders.length];
+		for (int i = 0; i < orders.length; i++) {
+			rgb[i] = ComplexValue.colorOf(orders[i]) & 0xFFFFFF;
+		}
+		// the pixels of a TYPE_INT_RGB image are these ints; copying them
+		// straight in skips setRGB()'s conversion of each one
+		image.getRaster().setDataElements(0, 0, ComplexSet.COLS, ComplexSet.ROWS, rgb);
+		return image;
+	}
+
+	/**
+	 * make the current view the displayed one and push it onto the history,
+	 * taking it from the speculative renderer when it was foreseen
+	 */
+	private void renderView() {
+		Main.log(ComplexImage.class.getSimpleName() + ".renderView() entered");
+
+		final double newZoom = zoom, newZoomStep = zoomStep;
+		final int newX = xValue, newY = yValue;
+		final Formula newFormula = formula;
+		final ComplexSet previousSet = theSet;
+		final int generation = ++renderGeneration;
+		final long asked = System.nanoTime();
+		// until the render lands, paint() shows the old bitmap moved to the view
+		repaint();
+
+		foreground.submit(new Runnable() {
+			@Override
+			public void run() {
+				final ComplexSet set;
+				final BufferedImage image;
+				Rendered r = speculative.claim(newZoom, newZoomStep, newX, newY, newFormula);
+				if (r != null) {
+					set = r.getSet();
+					image = r.getImage();
+				} else {
+					QualityController.Plan plan = quality.plan(previousSet, newZoom, newX, newY,
+							newFormula, asked);
+					if (plan != null)
+						renderQuick(plan, generation, asked, newZoom, newX, newY, newFormula);
+					// a newer view was asked for; its task renders that instead
+					if (foreground.isSuperseded()) return;
+					long start = System.nanoTime();
+					set = new ComplexSet(newZoom, newZoomStep, newX, newY, newFormula,
+							previousSet);
+					image = imageOf(set);
+					quality.fullRendered(set, System.nanoTime() - start);
+				}
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						showRendered(generation, set, image);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * runs on the foreground worker: render a view as planned to fit the
+	 * frame budget and show it until the full render replaces it
+	 * @param generation the foreground render this frame stands in for
+	 * @param asked when the view was asked for
+	 */
+	private void renderQuick(final QualityController.Plan plan, final int generation,
+			final long asked, double newZoom, int newX, int newY, Formula newFormula) {
+		long start = System.nanoTime();
+		int step = plan.getStep(), limit = plan.getMaxIterations();
+		int cols = ComplexSet.COLS / step, rows = ComplexSet.ROWS / step;
+		int[] rgb = new int[cols * rows];
+		long iterations = 0;
+		double half = step / 2d;
+		for (int y = 0; y < rows; y++) {
+			if (foreground.isSuperseded()) return;
+			newFormula.fillRow(rgb, y * cols, cols, ComplexSet.realAt(half, newZoom, newX),
+					step / newZoom, ComplexSet.imaginaryAt(y * step + half, newZoom, newY), limit);
+			for (int i = y * cols; i < (y + 1) * cols; i++) {
+				int order = rgb[i];
+				iterations += order + 1;
+				// pixels that ran out of iterations are taken to be in the set
+				rgb[i] = ComplexValue.colorOf(
+						order == limit ? ComplexValue.MAX_ITERATIONS : order) & 0xFFFFFF;
 			}
 		}
+		BufferedImage image = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_RGB);
+		image.getRaster().setDataElements(0, 0, cols, rows, rgb);
+		quality.quickRendered(plan, iterations, System.nanoTime() - start);
+
+		final Preview quick = new Preview(newZoom, newX, newY, newFormula, step, gesture);
+		quick.image = image;
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (generation != renderGeneration || quick.gesture != gesture) return;
+				latestPreview = quick;
+				shownPreview = quick;
+				paintImmediately(0, 0, ComplexSet.COLS, ComplexSet.ROWS);
+				quality.quickShown(plan, asked);
+			}
+		});
+	}
+
+	/**
+	 * render from now on within a frame budget
+	 * @param millis how long a new view may take to appear, or 0 to render
+	 * every view in full before showing it
+	 */
+	public void setFrameBudget(int millis) {
+		Main.log(ComplexImage.class.getSimpleName() + ".setFrameBudget() entered");
+
+		quality.setBudgetMillis(millis);
+	}
+
+	/**
+	 * a foreground render has finished: display it and push it onto the
+	 * history, unless the view has been changed again since it was asked for
+	 */
+	private void showRendered(int generation, ComplexSet set, BufferedImage image) {
+		if (generation != renderGeneration) return;
+		shownGeneration = generation;
+
+		theSet = set;
+		screen = image;
+		pyramid.add(theSet, screen);
+		history.push(theSet);
+		parent.historyChanged(history);
+		parent.renderFinished(theSet.getRenderStats());
+		latestPreview = null;
+		shownPreview = null;
+		repaint();
+		speculate();
+	}
+
+	/**
+	 * forget a foreground render that has been asked for but not shown
+	 * @return true if there was one
+	 */
+	private boolean abandonRender() {
+		boolean pending = renderGeneration != shownGeneration;
+		shownGeneration = ++renderGeneration;
+		return pending;
+	}
+
+	/**
+	 * while the user looks at this view, pre-render the ones the Zoom and
+	 * Previous buttons would show next
+	 */
+	private void speculate() {
+		// the same arithmetic as zoomImage()
+		speculative.prerender(zoom + zoomStep, zoomStep * zoomFactor,
+				(int) (xValue * zoomFactor), (int) (yValue * zoomFactor), formula);
+		ComplexSet previousSet = history.peekPrevious();
+		if (previousSet != null) speculative.prerender(previousSet);
 	}
 
 	/** let the parent container know how big this control should be
@@ -113,7 +445,119 @@ public class ComplexImage extends JPanel implements MouseInputListener {
 	@Override
 	public void paint(Graphics g) {
 		super.paint(g);
-		g.drawImage(screen, 0, 0, null);
+		paintView(g);
+		paintOrbit(g);
+		if (!painted) {
+			painted = true;
+			Main.log("first frame painted " + Main.millisSinceStart() + " ms after start");
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					speculate();
+				}
+			});
+		}
+		if (selecting && (selectEndX != dragStartX || selectEndY != dragStartY)) {
+			g.setColor(Color.WHITE);
+			g.drawRect(Math.min(dragStartX, selectEndX), Math.min(dragStartY, selectEndY),
+					Math.abs(selectEndX - dragStartX), Math.abs(selectEndY - dragStartY));
+		}
+	}
+
+	/**
+	 * draw the bitmap, or during a gesture whatever best shows the view
+	 */
+	private void paintView(Graphics g) {
+		if (shownPreview == null && showingSet()) {
+			g.drawImage(screen, 0, 0, null);
+			return;
+		}
+
+		// mid-gesture or while a render runs: draw what we have, moved and
+		// scaled to the current view. Each part of the view is drawn from
+		// the kept bitmap or preview nearest its scale that covers it
+		Graphics2D g2 = (Graphics2D) g.create();
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2.setColor(Color.BLACK);
+		g2.fillRect(0, 0, ComplexSet.COLS, ComplexSet.ROWS);
+
+		Area uncovered = new Area(new Rectangle(0, 0, ComplexSet.COLS, ComplexSet.ROWS));
+		Preview p = shownPreview;
+		double previewDistance = p == null ? 0d : Math.abs(Math.log(p.zoom / p.step / zoom));
+		pyramid.beginFrame();
+		for (Level level : pyramid.nearest(zoom, formula)) {
+			if (uncovered.isEmpty()) break;
+			if (p != null && Math.abs(Math.log(level.getZoom() / level.getStep() / zoom))
+					> previewDistance) {
+				drawView(g2, uncovered, p.image, p.step, p.zoom, p.xValue, p.yValue);
+				p = null;
+			}
+			if (drawView(g2, uncovered, level.getImage(), level.getStep(), level.getZoom(),
+					level.getxOffset(), level.getyOffset()))
+				pyramid.markUsed(level);
+		}
+		if (p != null) drawView(g2, uncovered, p.image, p.step, p.zoom, p.xValue, p.yValue);
+		// the bitmap may have been evicted; it is no use for another formula
+		if (theSet.getFormula().equals(formula))
+			drawView(g2, uncovered, screen, 1, theSet.getZoom(), theSet.getxOffset(),
+					theSet.getyOffset());
+		g2.dispose();
+	}
+
+	/**
+	 * @return true if the view and formula are those of theSet, so its
+	 * pixels and orders are those of the bitmap
+	 */
+	private boolean showingSet() {
+		return zoom == theSet.getZoom() && xValue == theSet.getxOffset()
+				&& yValue == theSet.getyOffset() && formula.equals(theSet.getFormula());
+	}
+
+	/**
+	 * draw the orbit under the mouse, if it was traced in the current view
+	 */
+	private void paintOrbit(Graphics g) {
+		Orbit o = orbit;
+		if (!probing || dragging || o == null || o.zoom != zoom
+				|| o.xValue != xValue || o.yValue != yValue) return;
+		g.setColor(Color.WHITE);
+		g.drawPolyline(o.xs, o.ys, o.xs.length);
+		g.drawOval(o.xs[0] - 3, o.ys[0] - 3, 6, 6);
+	}
+
+	/**
+	 * draw an image rendered for one view where it falls in the current view,
+	 * over only the part of the view not yet drawn
+	 * @param g where to draw
+	 * @param uncovered the part of the view not yet drawn; what the image
+	 * covers is taken from it
+	 * @param image the image to draw
+	 * @param step how many pixels of the view each image pixel covers
+	 * @param imageZoom the zoom the image was rendered at
+	 * @param imageX the horizontal offset the image was rendered at
+	 * @param imageY the vertical offset the image was rendered at
+	 * @return false if the image covers none of what was left to draw
+	 */
+	private boolean drawView(Graphics2D g, Area uncovered, BufferedImage image, int step,
+			double imageZoom, int imageX, int imageY) {
+		double right = image.getWidth() * step, bottom = image.getHeight() * step;
+		int x0 = (int) Math.round(ComplexSet.columnOf(
+				ComplexSet.realAt(0, imageZoom, imageX), zoom, xValue));
+		int x1 = (int) Math.round(ComplexSet.columnOf(
+				ComplexSet.realAt(right, imageZoom, imageX), zoom, xValue));
+		int y0 = (int) Math.round(ComplexSet.rowOf(
+				ComplexSet.imaginaryAt(0, imageZoom, imageY), zoom, yValue));
+		int y1 = (int) Math.round(ComplexSet.rowOf(
+				ComplexSet.imaginaryAt(bottom, imageZoom, imageY), zoom, yValue));
+		Rectangle covered = new Rectangle(x0, y0, x1 - x0, y1 - y0);
+		if (uncovered.isEmpty() || !uncovered.intersects(covered)) return false;
+		Graphics2D clipped = (Graphics2D) g.create();
+		clipped.clip(uncovered);
+		clipped.drawImage(image, x0, y0, x1 - x0, y1 - y0, null);
+		clipped.dispose();
+		uncovered.subtract(new Area(covered));
+		return true;
 	}
 
 	/**
@@ -132,11 +576,47 @@ public class ComplexImage extends JPanel implements MouseInputListener {
 		xValue = xValue + newX - xOffset;
 		yValue = yValue + newY - yOffset;
 
-		theSet = new ComplexSet(zoom, zoomStep, xValue, yValue);
-		history.push(theSet);
-		fillImage();
-		repaint();
+		renderView();
 	}
+	/**
+	 * zoom straight to the region inside a rectangle of the image, in one
+	 * render; the rectangle's center becomes the center of the view and the
+	 * whole rectangle stays in view
+	 * @param x0 one corner of the rectangle
+	 * @param y0 one corner of the rectangle
+	 * @param x1 the opposite corner
+	 * @param y1 the opposite corner
+	 */
+	private void zoomToBox(int x0, int y0, int x1, int y1) {
+		Main.log(ComplexImage.class.getSimpleName() + ".zoomToBox() entered");
+
+		int width = Math.abs(x1 - x0), height = Math.abs(y1 - y0);
+		if (width < DRAG_THRESHOLD || height < DRAG_THRESHOLD) {
+			repaint();
+			return;
+		}
+		double factor = Math.min((double) ComplexSet.COLS / width,
+				(double) ComplexSet.ROWS / height);
+		double real = ComplexSet.realAt((x0 + x1) / 2d, zoom, xValue);
+		double imaginary = ComplexSet.imaginaryAt((y0 + y1) / 2d, zoom, yValue);
+		double newZoom = zoom * factor;
+		if (Math.abs(real * newZoom) > MAX_OFFSET || Math.abs(imaginary * newZoom) > MAX_OFFSET) {
+			Main.log("box zoom too deep for the view offsets; ignored");
+			repaint();
+			return;
+		}
+
+		/* a ComplexSet records its own zoom, so any scale can go on the
+		 * history; the step the Zoom button takes next is scaled with it so
+		 * the button keeps its pace relative to the view */
+		zoom = newZoom;
+		zoomStep *= factor;
+		xValue = ComplexSet.xOffsetFor(real, ComplexSet.COLS / 2d, zoom);
+		yValue = ComplexSet.yOffsetFor(imaginary, ComplexSet.ROWS / 2d, zoom);
+
+		renderView();
+	}
+
 	/**
 	 * zooms the image when the zoom button is pushed
 	 */
@@ -151,22 +631,22 @@ public class ComplexImage extends JPanel implements MouseInputListener {
 		xValue *= zoomFactor;
 		yValue *= zoomFactor;
 
-		theSet = new ComplexSet(zoom, zoomStep, xValue, yValue);
-		history.push(theSet);
-		fillImage();
-		repaint();
+		renderView();
 	}
 
 	/**
-	 * saves the currently displayed image to the file system as a bitmap file
+	 * saves the currently displayed image to the file system as a bitmap file,
+	 * or its iteration data if a file of IterationFile.EXTENSION is chosen
 	 */
 	public void saveImage() {
 		Main.log(ComplexImage.class.getSimpleName() + ".saveImage() entered");
 
-		File saveFile = FileManipulation.save();
+		File saveFile = FileManipulation.save(theSet.getFormula().getName() + ".bmp");
 		if (saveFile != null) {
 			try {
-				ImageIO.write(screen, "BMP", saveFile);
+				if (FileManipulation.isIterationFile(saveFile))
+					IterationFile.write(theSet, saveFile);
+				else ImageIO.write(screen, "BMP", saveFile);
 			} catch (IOException e) {
 				e.printStackTrace();
 				System.err.println("Error writing to file!");
@@ -181,6 +661,15 @@ public class ComplexImage extends JPanel implements MouseInputListener {
 	public void previous() {
 		Main.log(ComplexImage.class.getSimpleName() + ".previous() entered");
 
+		if (abandonRender()) {
+			// the view being rendered was never shown; go back to the one that is
+			restoreView(theSet);
+			latestPreview = null;
+			shownPreview = null;
+			repaint();
+			return;
+		}
+
 		if (!history.isEmpty()) {
 			ComplexSet temp = defaultSet;
 			try {
@@ -193,17 +682,78 @@ public class ComplexImage extends JPanel implements MouseInputListener {
 				history.push(theSet);
 			}
 			else theSet = history.peek();
+			parent.historyChanged(history);
 
-			zoom = theSet.getZoom();
-			zoomStep = theSet.getzoomStep();
-			xValue = theSet.getxOffset();
-			yValue = theSet.getyOffset();
-			
-			fillImage();
+			restoreView(theSet);
+
+			Rendered r = speculative.claim(zoom, zoomStep, xValue, yValue, formula);
+			if (r != null && r.getSet() == theSet) {
+				screen = r.getImage();
+				pyramid.add(theSet, screen);
+			} else fillImage();
 			repaint();
+			speculate();
+		}
+	}
+
+	/**
+	 * go back to a view in the history in one step, discarding those after it
+	 * @param target a set on the history
+	 */
+	public void showHistory(ComplexSet target) {
+		Main.log(ComplexImage.class.getSimpleName() + ".showHistory() entered");
+
+		abandonRender();
+		latestPreview = null;
+		shownPreview = null;
+
+		while (history.peek() != target && history.peekPrevious() != null) {
+			try {
+				history.pop();
+			} catch (HistoryStackException e) {
+				e.printStackTrace();
+			}
+		}
+		theSet = history.peek();
+		parent.historyChanged(history);
+
+		restoreView(theSet);
+
+		Rendered r = speculative.claim(zoom, zoomStep, xValue, yValue, formula);
+		if (r != null && r.getSet() == theSet) {
+			screen = r.getImage();
+			pyramid.add(theSet, screen);
+		} else fillImage();
+		repaint();
+		speculate();
+	}
+
+	/**
+	 * make the view that of a set already rendered
+	 */
+	private void restoreView(ComplexSet set) {
+		zoom = set.getZoom();
+		zoomStep = set.getzoomStep();
+		xValue = set.getxOffset();
+		yValue = set.getyOffset();
+		if (!set.getFormula().equals(formula)) {
+			formula = set.getFormula();
+			parent.formulaChanged(formula);
 		}
 	}
 
+	/**
+	 * render the current view again with a different formula
+	 * @param newFormula the formula to use from now on
+	 */
+	public void setFormula(Formula newFormula) {
+		Main.log(ComplexImage.class.getSimpleName() + ".setFormula() entered");
+
+		if (newFormula.equals(formula)) return;
+		formula = newFormula;
+		renderView();
+	}
+
 	/**
 	 * empties the Stack and retrieves the oldest ComplexSet into the current
 	 * ComplexSet
@@ -211,6 +761,10 @@ public class ComplexImage extends JPanel implements MouseInputListener {
 	public void reset() {
 		Main.log(ComplexImage.class.getSimpleName() + ".reset() entered");
 
+		abandonRender();
+		latestPreview = null;
+		shownPreview = null;
+
 		while (!history.isEmpty()) {
 			try {
 				theSet = history.pop();
@@ -219,14 +773,15 @@ public class ComplexImage extends JPanel implements MouseInputListener {
 			}
 		}
 		history.push(theSet); // now the original set
+		parent.historyChanged(history);
 
-		zoom = theSet.getZoom();
-		xValue = theSet.getxOffset();
-		yValue = theSet.getyOffset();
-		zoomStep = 100;
+		restoreView(theSet);
+		zoomStep = HOME_ZOOM_STEP;
 
+		speculative.cancel();
 		fillImage();
 		repaint();
+		speculate();
 	}
 
 	/**
@@ -237,26 +792,63 @@ public class ComplexImage extends JPanel implements MouseInputListener {
 	 */
 	@Override
 	public void mouseMoved(MouseEvent e) {
-		double minReal, maxReal, minImag, maxImag, xIncrement, yInrementc, xVal, yVal;
 		int xPos, yPos;
 
-		minReal = theSet.getMinReal();
-		maxReal = theSet.getMaxReal();
-		minImag = theSet.getMinImaginary();
-		maxImag = theSet.getMaxImaginary();
-
 		xPos = e.getX();
 		yPos = e.getY();
 
-		xIncrement = (maxReal - minReal)/((double)ComplexSet.COLS);
-		yInrementc = (maxImag - minImag)/((double)ComplexSet.ROWS);
+		// the number shown, the order read and the orbit traced all belong
+		// to the same pixel, mapped as the set itself maps it
+		final double real = ComplexSet.realAt(xPos, zoom, xValue);
+		final double imaginary = ComplexSet.imaginaryAt(yPos, zoom, yValue);
 
-		xVal = minReal + ((double)xPos * xIncrement);
-		yVal = maxImag - ((double)yPos * yInrementc);
+		// the parent window forwards its own motion events, in its coordinates
+		boolean overImage = e.getSource() == this && xPos >= 0 && yPos >= 0
+				&& xPos < ComplexSet.COLS && yPos < ComplexSet.ROWS;
+		int order = overImage && showingSet() ? theSet.getOrder(xPos, yPos) : -1;
 
 		if ( ( (xPos > HORIZ_OFFSET) && (yPos > VERT_OFFSET) ) && 
 				( (xPos < ComplexSet.COLS + HORIZ_OFFSET) && (yPos < ComplexSet.ROWS + VERT_OFFSET) ) )
-			parent.updatePosition(xVal,yVal);
+			parent.updatePosition(real, imaginary, order);
+
+		if (e.getSource() == this) {
+			parent.updateJulia(real, imaginary);
+			probing = overImage;
+			if (overImage) {
+				final Orbit request = new Orbit(zoom, xValue, yValue);
+				final Formula f = formula;
+				orbitWorker.submit(new Runnable() {
+					@Override
+					public void run() {
+						traceOrbit(request, real, imaginary, f);
+					}
+				});
+			} else {
+				repaint();
+			}
+		}
+	}
+
+	/**
+	 * runs on the orbit worker: follow the orbit of c and put it on screen
+	 */
+	private void traceOrbit(Orbit request, double cReal, double cImaginary, Formula f) {
+		double[] reals = new double[ComplexValue.MAX_ITERATIONS];
+		double[] imaginaries = new double[ComplexValue.MAX_ITERATIONS];
+		int count = f.orbit(cReal, cImaginary, reals, imaginaries);
+		int[] xs = new int[count], ys = new int[count];
+		for (int i = 0; i < count; i++) {
+			xs[i] = clamp(ComplexSet.columnOf(reals[i], request.zoom, request.xValue));
+			ys[i] = clamp(ComplexSet.rowOf(imaginaries[i], request.zoom, request.yValue));
+		}
+		request.xs = xs;
+		request.ys = ys;
+		orbit = request;
+		repaint();
+	}
+
+	private static int clamp(double pixel) {
+		return (int) Math.round(Math.max(-ORBIT_CLAMP, Math.min(ORBIT_CLAMP, pixel)));
 	}
 
 	/**
@@ -265,13 +857,239 @@ public class ComplexImage extends JPanel implements MouseInputListener {
 	 */
 	@Override
 	public void mouseClicked(MouseEvent e) {
+		if (justDragged) {
+			justDragged = false;
+			return;
+		}
 		relocate(e.getX(), e.getY());
 	}
 
+	/**
+	 * remember where a possible drag starts
+	 * @see java.awt.event.MouseListener#mousePressed(java.awt.event.MouseEvent)
+	 */
+	@Override
+	public void mousePressed(MouseEvent e) {
+		justDragged = false;
+		selecting = e.isShiftDown() || SwingUtilities.isRightMouseButton(e);
+		dragStartX = selectEndX = e.getX();
+		dragStartY = selectEndY = e.getY();
+		dragStartXValue = xValue;
+		dragStartYValue = yValue;
+	}
+
+	/**
+	 * pan the view along with the mouse, or stretch the selected rectangle
+	 * @see java.awt.event.MouseMotionListener#mouseDragged(java.awt.event.MouseEvent)
+	 */
+	@Override
+	public void mouseDragged(MouseEvent e) {
+		// the parent window forwards its own motion events to us as well
+		if (e.getSource() != this) return;
+
+		int dx = e.getX() - dragStartX, dy = e.getY() - dragStartY;
+		if (!dragging) {
+			if (Math.abs(dx) < DRAG_THRESHOLD && Math.abs(dy) < DRAG_THRESHOLD) return;
+			dragging = true;
+			if (!selecting) beginGesture();
+		}
+		if (selecting) {
+			selectEndX = e.getX();
+			selectEndY = e.getY();
+			repaint();
+			return;
+		}
+		xValue = dragStartXValue - dx;
+		yValue = dragStartYValue - dy;
+		viewChanged();
+	}
+
+	/**
+	 * a drag ends with a full render of where it ended up, or, when a
+	 * rectangle is being selected, of that rectangle
+	 * @see java.awt.event.MouseListener#mouseReleased(java.awt.event.MouseEvent)
+	 */
+	@Override
+	public void mouseReleased(MouseEvent e) {
+		if (selecting) {
+			selecting = false;
+			justDragged = dragging;
+			dragging = false;
+			zoomToBox(dragStartX, dragStartY, selectEndX, selectEndY);
+		} else if (dragging) {
+			dragging = false;
+			justDragged = true;
+			endGesture();
+		}
+	}
+
+	/**
+	 * zoom in or out about the point under the cursor
+	 * @see java.awt.event.MouseWheelListener#mouseWheelMoved(java.awt.event.MouseWheelEvent)
+	 */
+	@Override
+	public void mouseWheelMoved(MouseWheelEvent e) {
+		if (dragging) return;
+		double factor = Math.pow(WHEEL_ZOOM_FACTOR, -e.getPreciseWheelRotation());
+		if (factor == 1d) return;
+		if (!wheelTimer.isRunning()) beginGesture();
+
+		// keep the complex value under the cursor where it is
+		double real = ComplexSet.realAt(e.getX(), zoom, xValue);
+		double imaginary = ComplexSet.imaginaryAt(e.getY(), zoom, yValue);
+		if (Math.abs(real * zoom * factor) > MAX_OFFSET
+				|| Math.abs(imaginary * zoom * factor) > MAX_OFFSET) return;
+		zoom *= factor;
+		zoomStep *= factor;
+		xValue = ComplexSet.xOffsetFor(real, e.getX(), zoom);
+		yValue = ComplexSet.yOffsetFor(imaginary, e.getY(), zoom);
+
+		wheelTimer.restart();
+		viewChanged();
+	}
+
+	/**
+	 * start following a drag or wheel gesture
+	 */
+	private void beginGesture() {
+		Main.log(ComplexImage.class.getSimpleName() + ".beginGesture() entered");
+
+		speculative.cancel();
+		gesture++;
+		frameTimer.start();
+	}
+
+	/**
+	 * the view has moved during a gesture: show the old bitmap in its new
+	 * place right away and ask for a preview of the new view
+	 */
+	private void viewChanged() {
+		repaint();
+		final Preview request = new Preview(zoom, xValue, yValue, formula, PREVIEW_STEP,
+				gesture);
+		previewWorker.submit(new Runnable() {
+			@Override
+			public void run() {
+				renderPreview(request);
+			}
+		});
+	}
+
+	/**
+	 * finish a gesture with one full render, committed to the history
+	 */
+	private void endGesture() {
+		Main.log(ComplexImage.class.getSimpleName() + ".endGesture() entered");
+
+		wheelTimer.stop();
+		frameTimer.stop();
+		gesture++;
+
+		// the last preview stays on screen until the full render replaces it
+		if (zoom != theSet.getZoom() || xValue != theSet.getxOffset()
+				|| yValue != theSet.getyOffset()) {
+			renderView();
+		} else {
+			latestPreview = null;
+			shownPreview = null;
+			repaint();
+			speculate();
+		}
+	}
+
+	/**
+	 * called by the frame timer: put the newest preview on screen, so the
+	 * display is refreshed at most once a frame however fast previews arrive
+	 */
+	private void showLatestPreview() {
+		Preview p = latestPreview;
+		if (p != shownPreview) {
+			shownPreview = p;
+			repaint();
+		}
+	}
+
+	/**
+	 * runs on the preview worker: render the latest view asked for at
+	 * reduced resolution, giving up as soon as a newer view is asked for
+	 */
+	private void renderPreview(Preview request) {
+		int cols = ComplexSet.COLS / PREVIEW_STEP, rows = ComplexSet.ROWS / PREVIEW_STEP;
+		int[] rgb = new int[cols * rows];
+		double half = PREVIEW_STEP / 2d;
+		for (int y = 0; y < rows; y++) {
+			if (previewWorker.isSuperseded() || request.gesture != gesture) return;
+			request.formula.fillRow(rgb, y * cols, cols,
+					ComplexSet.realAt(half, request.zoom, request.xValue),
+					PREVIEW_STEP / request.zoom,
+					ComplexSet.imaginaryAt(y * PREVIEW_STEP + half, request.zoom, request.yValue));
+			for (int i = y * cols; i < (y + 1) * cols; i++) rgb[i] = ComplexValue.colorOf(rgb[i]);
+		}
+		BufferedImage image = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, cols, rows, rgb, 0, cols);
+		request.image = image;
+		if (request.gesture == gesture) latestPreview = request;
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * the orbit of the number under the mouse, in pixels of the view it was
+	 * traced in
+	 */
+	private static final class Orbit {
+		private final double zoom;
+		private final int xValue, yValue;
+		/**
+		 * set by the orbit worker once traced
+		 */
+		private int[] xs, ys;
+
+		Orbit(double zoom, int xValue, int yValue) {
+			this.zoom = zoom;
+			this.xValue = xValue;
+			this.yValue = yValue;
+		}
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * a coarse rendering of a view, made while a gesture is under way or to
+	 * stand in for a render that would overrun the frame budget
+	 */
+	private static final class Preview {
+		private final double zoom;
+		private final int xValue, yValue;
+		private final Formula formula;
+		private final int step;
+		/**
+		 * the gesture this preview was asked for during
+		 */
+		private final int gesture;
+		/**
+		 * set by the preview worker once rendered
+		 */
+		private BufferedImage image;
+
+		Preview(double zoom, int xValue, int yValue, Formula formula, int step, int gesture) {
+			this.zoom = zoom;
+			this.xValue = xValue;
+			this.yValue = yValue;
+			this.formula = formula;
+			this.step = step;
+			this.gesture = gesture;
+		}
+	}
+
+	/**
+	 * stop drawing the orbit when the mouse leaves the image
+	 * @see java.awt.event.MouseListener#mouseExited(java.awt.event.MouseEvent)
+	 */
+	@Override public void mouseExited(MouseEvent e) {
+		if (e.getSource() != this) return;
+		probing = false;
+		repaint();
+	}
+
 	//not used
 	@Override public void mouseEntered(MouseEvent e) {}
-	@Override public void mouseExited(MouseEvent e) {}
-	@Override public void mouseReleased(MouseEvent e) {}
-	@Override public void mouseDragged(MouseEvent e) {}
-	@Override public void mousePressed(MouseEvent e) {}
 }
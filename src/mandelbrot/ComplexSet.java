@@ -1,10 +1,13 @@
 package mandelbrot;
 
+import java.util.concurrent.CancellationException;
+
 /**
  * @author John Bannister <john_bannister@my.uri.edu>
  * 
  * Instances of this class represent the set of numbers that make up a portion
- * of the complex plane. Owns 360000 instances of ComplexValue.
+ * of the complex plane. Holds the order of each of its 360000 numbers in an
+ * iteration buffer.
  */
 public class ComplexSet {
 	/**
@@ -17,9 +20,14 @@ public class ComplexSet {
 	 */
 	private static final int DEFAULT_X_OFFSET = 500, DEFUALT_Y_OFFSET = 280;
 	/**
-	 * a 2D array of ComplexValues that span the range of this set
+	 * the order of every number in the set, row by row: the order of the
+	 * number in column x of row y is at index y * COLS + x
+	 */
+	private int[] orders;
+	/**
+	 * how the render of this set went, when it was rendered in parallel
 	 */
-	private ComplexValue[][] complexSet;
+	private TileScheduler.RenderStats renderStats;
 	/**
 	 * the least imaginary value this set covers
 	 */
@@ -43,51 +51,207 @@ public class ComplexSet {
 	 */
 	private double zoom, zoomStep;
 	private int xOffset, yOffset;
+	/**
+	 * the operation that decides the order of each number
+	 */
+	private Formula formula;
 
 
+	/**
+	 * create a set of the Mandelbrot formula on the calling thread alone
+	 */
 	public ComplexSet(double zoom, double zoomFactor, int xOffset, int yOffset) {
+		this(zoom, zoomFactor, xOffset, yOffset, Formula.MANDELBROT);
+	}
+
+	/**
+	 * create the set on the calling thread alone
+	 */
+	public ComplexSet(double zoom, double zoomFactor, int xOffset, int yOffset,
+			Formula formula) {
 		super();
 		this.zoom = zoom;
 		this.zoomStep = zoomFactor;
 		this.xOffset = xOffset;
 		this.yOffset = yOffset;
-		complexSet = new ComplexValue[ROWS][COLS];
+		this.formula = formula;
+		orders = new int[ROWS * COLS];
+		findBounds();
 		
 		createSet();
 	}
 
 	/**
-	 * @return the array of ComplexValues that this object holds
+	 * create the set on all cores, most expensive tiles first
+	 * @param previous the set displayed before this one, whose orders are
+	 * used to predict what each tile will cost; may be null
+	 * @see TileScheduler
+	 */
+	ComplexSet(double zoom, double zoomFactor, int xOffset, int yOffset,
+			Formula formula, ComplexSet previous) {
+		super();
+		this.zoom = zoom;
+		this.zoomStep = zoomFactor;
+		this.xOffset = xOffset;
+		this.yOffset = yOffset;
+		this.formula = formula;
+		orders = new int[ROWS * COLS];
+		findBounds();
+
+		renderStats = TileScheduler.render(this, previous);
+	}
+
+	/**
+	 * create a set whose orders were computed earlier
+	 * @param orders the iteration buffer, which the set takes over
+	 * @see HomeView
+	 */
+	ComplexSet(double zoom, double zoomFactor, int xOffset, int yOffset,
+			Formula formula, int[] orders) {
+		super();
+		this.zoom = zoom;
+		this.zoomStep = zoomFactor;
+		this.xOffset = xOffset;
+		this.yOffset = yOffset;
+		this.formula = formula;
+		this.orders = orders;
+		findBounds();
+	}
+
+	/**
+	 * @return the numbers of this set as ComplexValues, the one in column x
+	 * of row y at [x][y]. They are made from the iteration buffer on each
+	 * call; getOrders() is far cheaper where the orders are all that is
+	 * wanted.
 	 */
 	public ComplexValue[][] getComplexSet() {
 		Main.log(ComplexSet.class.getSimpleName() + ".getComplexSet() entered");
 
+		ComplexValue[][] complexSet = new ComplexValue[COLS][ROWS];
+		for (int y = 0; y < ROWS; y++) {
+			double theImaginary = imaginaryAt(y, zoom, yOffset);
+			for (int x = 0; x < COLS; x++) {
+				complexSet[x][y] = new ComplexValue(realAt(x, zoom, xOffset), theImaginary,
+						orders[y * COLS + x]);
+			}
+		}
 		return complexSet;
 	}
 
 	/**
-	 * on instantiation, create the ComplexValue objects from the range of
-	 * values this object holds
+	 * @return the iteration buffer: the order of the number in column x of
+	 * row y is at index y * COLS + x. Not to be modified.
+	 */
+	public int[] getOrders() {
+		return orders;
+	}
+
+	/**
+	 * @return the order of the number at column x, row y
+	 */
+	public int getOrder(int x, int y) {
+		return orders[y * COLS + x];
+	}
+
+	/**
+	 * @return how the parallel render of this set went, or null if it was
+	 * created on a single thread
+	 */
+	public TileScheduler.RenderStats getRenderStats() {
+		return renderStats;
+	}
+
+	/**
+	 * record the range of values this set covers
+	 */
+	private void findBounds() {
+		minReal = realAt(0, zoom, xOffset);
+		maxReal = realAt(COLS - 1, zoom, xOffset);
+		minImaginary = imaginaryAt(0, zoom, yOffset);
+		maxImaginary = imaginaryAt(ROWS - 1, zoom, yOffset);
+	}
+
+	/**
+	 * on instantiation, find the orders of the range of values this object
+	 * holds
+	 * <p>
+	 * Background renders are stopped by interrupting the thread; the
+	 * constructor then throws a CancellationException.
 	 */
 	private void createSet() {
 		Main.log(ComplexSet.class.getSimpleName() + ".createSet() entered");
 		
-		double theReal, theImaginary;
 		for (int y = 0; y < ROWS; y++) {
-			for (int x = 0; x < COLS; x++) {
-				theReal = ((double)(x - DEFAULT_X_OFFSET + xOffset)) / zoom;
-				if (x == 0) minReal = theReal;
-				else if (x == COLS - 1) maxReal = theReal;
-				
-				theImaginary = ((double)(y - DEFUALT_Y_OFFSET + yOffset)) / zoom;
-				if (y == 0) minImaginary = theImaginary;
-				else if (y == ROWS - 1) maxImaginary = theImaginary;
-				
-				complexSet[x][y] = new ComplexValue(theReal, theImaginary);
-			}
+			if (Thread.currentThread().isInterrupted())
+				throw new CancellationException("ComplexSet render interrupted");
+			fillRow(y, 0, COLS);
 		}
 	}
 
+	/**
+	 * find the orders of part of one row
+	 * @param y the row
+	 * @param fromX the first column
+	 * @param toX one past the last column
+	 */
+	void fillRow(int y, int fromX, int toX) {
+		formula.fillRow(orders, y * COLS + fromX, toX - fromX,
+				realAt(fromX, zoom, xOffset), 1d / zoom, imaginaryAt(y, zoom, yOffset));
+	}
+
+	/**
+	 * the mapping from pixels to the complex plane used by createSet(), for
+	 * any zoom and offsets
+	 * @param x a column, possibly fractional or outside the set
+	 * @param zoom pixels per unit
+	 * @param xOffset the view's horizontal offset in pixels
+	 * @return the real value at that column
+	 */
+	static double realAt(double x, double zoom, int xOffset) {
+		return (x - DEFAULT_X_OFFSET + xOffset) / zoom;
+	}
+
+	/**
+	 * @param y a row, possibly fractional or outside the set
+	 * @param zoom pixels per unit
+	 * @param yOffset the view's vertical offset in pixels
+	 * @return the imaginary value at that row
+	 * @see #realAt(double, double, int)
+	 */
+	static double imaginaryAt(double y, double zoom, int yOffset) {
+		return (y - DEFUALT_Y_OFFSET + yOffset) / zoom;
+	}
+
+	/**
+	 * the inverse of realAt()
+	 * @return the column, possibly fractional, at which the real value lies
+	 */
+	static double columnOf(double real, double zoom, int xOffset) {
+		return real * zoom + DEFAULT_X_OFFSET - xOffset;
+	}
+
+	/**
+	 * the inverse of imaginaryAt()
+	 * @return the row, possibly fractional, at which the imaginary value lies
+	 */
+	static double rowOf(double imaginary, double zoom, int yOffset) {
+		return imaginary * zoom + DEFUALT_Y_OFFSET - yOffset;
+	}
+
+	/**
+	 * @return the horizontal offset that puts the real value at column x
+	 */
+	static int xOffsetFor(double real, double x, double zoom) {
+		return (int) Math.round(real * zoom - x + DEFAULT_X_OFFSET);
+	}
+
+	/**
+	 * @return the vertical offset that puts the imaginary value at row y
+	 */
+	static int yOffsetFor(double imaginary, double y, double zoom) {
+		return (int) Math.round(imaginary * zoom - y + DEFUALT_Y_OFFSET);
+	}
+
 	// setters and getters for fields
 	/**
 	 * @return the minImaginary
@@ -138,6 +302,13 @@ public class ComplexSet {
 		return yOffset;
 	}
 
+	/**
+	 * @return the formula
+	 */
+	public Formula getFormula() {
+		return formula;
+	}
+
 	/**
 	 * @return the zoomStep
 	 */
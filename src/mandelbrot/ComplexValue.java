@@ -54,7 +54,19 @@ public class ComplexValue {
 		isInSet = true;
 
 		computeOrder();
-		color = setColor(order);
+		color = colorOf(order);
+	}
+
+	/**
+	 * a number whose order is already known, as from an iteration buffer
+	 */
+	ComplexValue(double real, double imaginary, int order) {
+		super();
+		this.real = real;
+		this.imaginary = imaginary;
+		this.order = order;
+		isInSet = true;
+		color = colorOf(order);
 	}
 
 	/**
@@ -106,20 +118,89 @@ public class ComplexValue {
 	 * <p>This method also sets order
 	 */
 	private void computeOrder() {
-		double zReal = 0d, zImaginary = 0d, cReal, cImaginary, temp;
+		order = computeOrder(real, imaginary);
+		if (order < MAX_ITERATIONS) isInSet = true;
+	}
+
+	/**
+	 * the escape-time kernel behind computeOrder(), usable without building
+	 * a ComplexValue for every point
+	 * @param cReal the real part of c
+	 * @param cImaginary the imaginary part of c
+	 * @return the order of c
+	 */
+	public static int computeOrder(double cReal, double cImaginary) {
+		return computeOrder(0d, 0d, cReal, cImaginary);
+	}
+
+	/**
+	 * the same operation started from any z rather than from 0. With c held
+	 * fixed and z varying this gives the Julia set of c.
+	 * @param zReal the real part of the starting z
+	 * @param zImaginary the imaginary part of the starting z
+	 * @param cReal the real part of c
+	 * @param cImaginary the imaginary part of c
+	 * @return the number of times z is redefined before reaching the
+	 * threshold, at most MAX_ITERATIONS
+	 */
+	public static int computeOrder(double zReal, double zImaginary,
+			double cReal, double cImaginary) {
+		return computeOrder(zReal, zImaginary, cReal, cImaginary, MAX_ITERATIONS);
+	}
+
+	/**
+	 * the same operation giving up after at most maxIterations
+	 * @return the number of times z is redefined before reaching the
+	 * threshold, at most maxIterations
+	 */
+	static int computeOrder(double zReal, double zImaginary,
+			double cReal, double cImaginary, int maxIterations) {
+		return iterate(zReal, zImaginary, cReal, cImaginary, maxIterations, null, null);
+	}
+
+	/**
+	 * the one copy of the operation, which can also record the orbit. The
+	 * callers that only want the order pass null, and once this is inlined
+	 * into them the JIT drops the recording altogether.
+	 * @param reals where to put the real part of each z after the first, or
+	 * null; it must hold maxIterations
+	 * @param imaginaries where to put the imaginary parts, or null if reals is
+	 * @return the number of times z is redefined before reaching the
+	 * threshold, at most maxIterations
+	 */
+	static int iterate(double zReal, double zImaginary, double cReal, double cImaginary,
+			int maxIterations, double[] reals, double[] imaginaries) {
+		double temp;
 		int count = 0;
-		cReal = real;
-		cImaginary = imaginary;
 
 		while (Math.sqrt(sqr(zReal) + sqr(zImaginary)) < THRESHOLD 
-				&& count < MAX_ITERATIONS ) {
+				&& count < maxIterations ) {
 			temp = sqr(zReal) - sqr(zImaginary) + cReal;
 			zImaginary = 2 * zReal * zImaginary + cImaginary;
 			zReal = temp;
+			if (reals != null) {
+				reals[count] = zReal;
+				imaginaries[count] = zImaginary;
+			}
 			count++;
 		}
-		order = count;
-		if (order < MAX_ITERATIONS) isInSet = true;
+		return count;
+	}
+
+	/**
+	 * a cheap test that finds most of the Mandelbrot set without iterating:
+	 * c is in the set if it lies in the main cardioid or in the disc of the
+	 * period-2 bulb to its left
+	 * @param cReal the real part of c
+	 * @param cImaginary the imaginary part of c
+	 * @return true if c is certainly in the set; false says nothing
+	 */
+	public static boolean inCardioidOrBulb(double cReal, double cImaginary) {
+		double y2 = sqr(cImaginary);
+		double xq = cReal - 0.25d;
+		double q = sqr(xq) + y2;
+		if (q * (q + xq) <= 0.25d * y2) return true;
+		return sqr(cReal + 1d) + y2 <= 0.0625d;
 	}
 
 	/**
@@ -127,9 +208,10 @@ public class ComplexValue {
 	 * @param count
 	 * @return the RGB color
 	 */
-	private int setColor(int count) {
+	public static int colorOf(int count) {
 		int temp = count;
 		int exponent = 0;
+		int color = 0;
 		
 		while (temp > 0) {
 			temp = temp / 2;
@@ -168,7 +250,7 @@ public class ComplexValue {
 	 * @param theNum a double to be squared
 	 * @return the number squared
 	 */
-	private double sqr(double theNum){
+	private static double sqr(double theNum){
 		return theNum * theNum;
 	}
 
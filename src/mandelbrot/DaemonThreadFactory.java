@@ -0,0 +1,37 @@
+package mandelbrot;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ * names worker threads and keeps them from holding the JVM open
+ */
+final class DaemonThreadFactory implements ThreadFactory {
+	/**
+	 * every thread made here is named this, followed by a count
+	 */
+	private final String prefix;
+	/**
+	 * the priority every thread made here runs at
+	 */
+	private final int priority;
+	private final AtomicInteger count = new AtomicInteger();
+
+	DaemonThreadFactory(String prefix) {
+		this(prefix, Thread.NORM_PRIORITY);
+	}
+
+	DaemonThreadFactory(String prefix, int priority) {
+		this.prefix = prefix;
+		this.priority = priority;
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+		Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+		t.setDaemon(true);
+		t.setPriority(priority);
+		return t;
+	}
+}
@@ -0,0 +1,230 @@
+package mandelbrot;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * Renders the Mandelbrot set shaded by distance to its boundary. Alongside
+ * z the kernel follows dz/dc, from which an escaping orbit gives a lower
+ * bound on how far c is from the set. Pixels near the boundary shade from
+ * black at the boundary to the far color SHADE_PIXELS away; pixels inside
+ * the set are black.
+ *
+ * <p>
+ * A large distance says more than how to color one pixel: every number
+ * within it is outside the set, and nearly as far from it. So when a pixel
+ * is far enough out, the whole disc of pixels around it that must be at
+ * least SHADE_PIXELS from the set is filled with the far color without
+ * being iterated. On most views this leaves only a fraction of the pixels
+ * to compute. The filled pixels are truly that far out, but the bound is
+ * up to 4e^G times smaller than the distance (G the Green's function at c),
+ * so had they been iterated their own bounds might have shaded some of
+ * them a little darker; render() and renderEveryPixel() can differ there.
+ *
+ * <p>
+ * Orders, and so the usual colors, cannot be filled in like this: the bound
+ * says a number escapes, not in how many steps. Only the Mandelbrot formula
+ * has a distance estimate here. Renderer delivers the distances too, to
+ * programs that ask for them with RenderRequest.withDistances().
+ */
+public final class DistanceEstimator {
+	/**
+	 * orbits escape when |z|^2 passes this; far larger than the usual
+	 * threshold, since the estimate is only good once |z| is large
+	 */
+	private static final double ESCAPE = 1e6;
+	/**
+	 * pixels this many pixels or more from the set get the far color
+	 */
+	public static final double SHADE_PIXELS = 2d;
+	/**
+	 * colors of the set, its boundary and the far exterior
+	 */
+	private static final int INTERIOR = 0x000000, BOUNDARY = 0x101830, FAR = 0xF0F4FF;
+
+	private DistanceEstimator() {}
+
+	/**
+	 * @return a lower bound on the distance from c to the Mandelbrot set,
+	 * or -1 if c is taken to be in the set: it has not escaped within
+	 * MAX_ITERATIONS
+	 */
+	public static double distance(double cReal, double cImaginary) {
+		if (ComplexValue.inCardioidOrBulb(cReal, cImaginary)) return -1d;
+		double zReal = 0d, zImaginary = 0d, dReal = 0d, dImaginary = 0d, temp;
+		double power = 1d; // 2^n after n steps
+		for (int n = 0; n < ComplexValue.MAX_ITERATIONS; n++) {
+			// dz/dc = 2 z dz/dc + 1, then z = z^2 + c
+			temp = 2 * (zReal * dReal - zImaginary * dImaginary) + 1;
+			dImaginary = 2 * (zReal * dImaginary + zImaginary * dReal);
+			dReal = temp;
+			temp = zReal * zReal - zImaginary * zImaginary + cReal;
+			zImaginary = 2 * zReal * zImaginary + cImaginary;
+			zReal = temp;
+			power *= 2;
+			double modulus2 = zReal * zReal + zImaginary * zImaginary;
+			if (modulus2 > ESCAPE) {
+				// the Green's function G and |G'|, and Koebe's lower bound
+				double modulus = Math.sqrt(modulus2);
+				double g = Math.log(modulus) / power;
+				double gPrime = Math.hypot(dReal, dImaginary) / (modulus * power);
+				return -Math.expm1(-2 * g) / (4 * gPrime);
+			}
+		}
+		return -1d;
+	}
+
+	/**
+	 * @param pixels the distance from the set in pixels, or less than 0
+	 * inside it
+	 * @return the color of a pixel that far from the set
+	 */
+	public static int shade(double pixels) {
+		if (pixels < 0) return INTERIOR;
+		if (pixels >= SHADE_PIXELS) return FAR;
+		double t = Math.sqrt(pixels / SHADE_PIXELS);
+		int color = 0;
+		for (int shift = 0; shift <= 16; shift += 8) {
+			int from = (BOUNDARY >> shift) & 0xFF, to = (FAR >> shift) & 0xFF;
+			color |= (int) Math.round(from + t * (to - from)) << shift;
+		}
+		return color;
+	}
+
+	/**
+	 * render a view the size of a ComplexSet, filling discs far from the set
+	 * @param zoom pixels per unit, as in ComplexSet
+	 * @param xOffset the horizontal offset, as in ComplexSet
+	 * @param yOffset the vertical offset, as in ComplexSet
+	 * @return the colors and what they cost
+	 */
+	public static Result render(double zoom, int xOffset, int yOffset) {
+		Main.log(DistanceEstimator.class.getSimpleName() + ".render() entered");
+
+		long start = System.nanoTime();
+		double[] pixels = new double[ComplexSet.COLS * ComplexSet.ROWS];
+		int evaluated = estimate(pixels, ComplexSet.COLS, ComplexSet.ROWS,
+				ComplexSet.realAt(0, zoom, xOffset), ComplexSet.imaginaryAt(0, zoom, yOffset),
+				1d / zoom, 1d / zoom);
+		int[] rgb = new int[pixels.length];
+		for (int i = 0; i < pixels.length; i++) rgb[i] = shade(pixels[i]);
+		return new Result(rgb, evaluated, System.nanoTime() - start);
+	}
+
+	/**
+	 * render a view computing every pixel, for comparison with render()
+	 */
+	public static Result renderEveryPixel(double zoom, int xOffset, int yOffset) {
+		long start = System.nanoTime();
+		int[] rgb = new int[ComplexSet.COLS * ComplexSet.ROWS];
+		double real0 = ComplexSet.realAt(0, zoom, xOffset);
+		double imaginary0 = ComplexSet.imaginaryAt(0, zoom, yOffset);
+		for (int y = 0; y < ComplexSet.ROWS; y++) {
+			for (int x = 0; x < ComplexSet.COLS; x++) {
+				double d = distance(real0 + x / zoom, imaginary0 + y / zoom);
+				rgb[y * ComplexSet.COLS + x] = shade(d < 0 ? -1d : d * zoom);
+			}
+		}
+		return new Result(rgb, rgb.length, System.nanoTime() - start);
+	}
+
+	/**
+	 * find a lower bound on every pixel's distance from the set, filling in
+	 * the discs around pixels far from it without iterating them
+	 * @param pixels where to put the bounds in pixels, row by row; less than
+	 * 0 inside the set. Those filled in are the bound of the pixel whose disc
+	 * they are in less how far they are from it, at least SHADE_PIXELS.
+	 * @param real0 the real value of the top left pixel
+	 * @param imaginary0 the imaginary value of the top left pixel
+	 * @param pixelSize the distance between neighbouring pixels
+	 * @param imaginaryStep the difference in imaginary value from one row to
+	 * the next, pixelSize or -pixelSize
+	 * @return how many pixels were iterated
+	 */
+	static int estimate(double[] pixels, int width, int height, double real0,
+			double imaginary0, double pixelSize, double imaginaryStep) {
+		boolean[] known = new boolean[width * height];
+		int evaluated = 0;
+		for (int y = 0; y < height; y++) {
+			double imaginary = imaginary0 + y * imaginaryStep;
+			for (int x = 0; x < width; x++) {
+				if (known[y * width + x]) continue;
+				double d = distance(real0 + x * pixelSize, imaginary);
+				evaluated++;
+				double bound = d < 0 ? -1d : d / pixelSize;
+				pixels[y * width + x] = bound;
+				known[y * width + x] = true;
+				// every pixel this close is at least SHADE_PIXELS from the set
+				double radius = bound - SHADE_PIXELS;
+				if (radius >= 1d) fillDisc(pixels, known, width, height, x, y, radius);
+			}
+		}
+		return evaluated;
+	}
+
+	/**
+	 * bound every pixel not yet known within a radius of (x, y) by the bound
+	 * at (x, y) less its distance from there
+	 */
+	private static void fillDisc(double[] pixels, boolean[] known, int width, int height,
+			int x, int y, double radius) {
+		double bound = pixels[y * width + x];
+		int reach = (int) radius;
+		for (int dy = -reach; dy <= reach; dy++) {
+			int row = y + dy;
+			if (row < 0 || row >= height) continue;
+			int half = (int) Math.sqrt(radius * radius - dy * dy);
+			int from = Math.max(0, x - half), to = Math.min(width - 1, x + half);
+			for (int i = from; i <= to; i++) {
+				if (!known[row * width + i]) {
+					pixels[row * width + i] = bound - Math.sqrt((i - x) * (i - x) + dy * dy);
+					known[row * width + i] = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * the colors of a rendered view and how many pixels were computed
+	 */
+	public static final class Result {
+		private final int[] rgb;
+		private final int evaluated;
+		private final long nanos;
+
+		Result(int[] rgb, int evaluated, long nanos) {
+			this.rgb = rgb;
+			this.evaluated = evaluated;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return the color of every pixel, row by row. Not to be modified.
+		 */
+		public int[] getRGB() {
+			return rgb;
+		}
+
+		/**
+		 * @return how many pixels were iterated
+		 */
+		public int getEvaluated() {
+			return evaluated;
+		}
+
+		/**
+		 * @return the fraction of pixels filled in without being iterated
+		 */
+		public double getSavedFraction() {
+			return 1d - (double) evaluated / rgb.length;
+		}
+
+		/**
+		 * @return how long the render took
+		 */
+		public long getElapsedNanos() {
+			return nanos;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package mandelbrot;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * Reports what DistanceEstimator's disc filling saves on some typical views,
+ * and can write the first of them to a PNG file to look at. It lives apart
+ * from DistanceEstimator so that the rendering library never loads the
+ * image classes of AWT.
+ */
+public final class DistanceReport {
+	private DistanceReport() {}
+
+	/**
+	 * report what disc filling saves on some typical views, against both
+	 * computing every pixel's distance and the usual per-pixel render of
+	 * orders
+	 * @param args optionally a PNG file to write the first view to
+	 */
+	public static void main(String[] args) throws IOException {
+		String[] names = { "home", "seahorse valley", "elephant valley", "spiral" };
+		double[][] views = { // center real, center imaginary, zoom
+				{ -0.8d, 0.08d, 250d },
+				{ -0.745d, 0.11d, 4000d },
+				{ 0.28d, 0.008d, 8000d },
+				{ -0.7436d, 0.1319d, 200000d } };
+		for (int pass = 0; pass < 2; pass++) { // the first pass warms up the JIT
+			for (int v = 0; v < views.length; v++) {
+				double zoom = views[v][2];
+				int xOffset = ComplexSet.xOffsetFor(views[v][0], ComplexSet.COLS / 2d, zoom);
+				int yOffset = ComplexSet.yOffsetFor(views[v][1], ComplexSet.ROWS / 2d, zoom);
+				DistanceEstimator.Result discs = DistanceEstimator.render(zoom, xOffset, yOffset);
+				DistanceEstimator.Result every = DistanceEstimator.renderEveryPixel(zoom, xOffset, yOffset);
+				long t0 = System.nanoTime();
+				new ComplexSet(zoom, 0d, xOffset, yOffset);
+				long orders = System.nanoTime() - t0;
+				int differ = 0;
+				for (int i = 0; i < every.getRGB().length; i++) {
+					if (every.getRGB()[i] != discs.getRGB()[i]) differ++;
+				}
+				if (pass == 1) {
+					System.out.printf("%-16s %6d of %d pixels iterated, %4.1f%% saved; "
+							+ "%5.1f ms (every pixel %5.1f ms, orders %5.1f ms); %d pixels differ%n",
+							names[v], discs.getEvaluated(), discs.getRGB().length,
+							100d * discs.getSavedFraction(), discs.getElapsedNanos() / 1e6,
+							every.getElapsedNanos() / 1e6, orders / 1e6, differ);
+				}
+				if (pass == 1 && v == 0 && args.length > 0) {
+					BufferedImage image = new BufferedImage(ComplexSet.COLS, ComplexSet.ROWS,
+							BufferedImage.TYPE_INT_RGB);
+					image.getRaster().setDataElements(0, 0, ComplexSet.COLS, ComplexSet.ROWS,
+							discs.getRGB());
+					ImageIO.write(image, "png", new File(args[0]));
+				}
+			}
+		}
+	}
+}
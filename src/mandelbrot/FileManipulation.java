@@ -7,13 +7,21 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 
 /**
  * @author John Bannister <john_bannister@my.uri.edu>
- * Routine to save a bitmap file
+ * Routine to save a bitmap file, or the iteration data behind it
  */
 public final class FileManipulation {
 	/**
 	 * a file chooser
 	 */
 	private static JFileChooser chooseFile = new JFileChooser();
+	/**
+	 * the choices of what to save
+	 */
+	private static FileNameExtensionFilter bitmapFilter =
+			new FileNameExtensionFilter("BMP file", ".bmp");
+	private static FileNameExtensionFilter iterationFilter =
+			new FileNameExtensionFilter("Iteration data (." + IterationFile.EXTENSION + ")",
+					IterationFile.EXTENSION);
 
 	public FileManipulation() {}
 	
@@ -22,18 +30,42 @@ public final class FileManipulation {
 	 * @return a file handle to the file that will be saved
 	 */
 	public static File save() {
+		return save("mandelbrot.bmp");
+	}
+
+	/**
+	 * Uses a file save dialog to return a File to save. Choosing the
+	 * iteration data filter gives a file ending in IterationFile.EXTENSION.
+	 * @param suggestedName the file name the dialog starts with
+	 * @return a file handle to the file that will be saved
+	 */
+	public static File save(String suggestedName) {
 		File theSaveFile = null;
 		// tip from
 		// http://stackoverflow.com/questions/356671/jfilechooser-showsavedialog-how-to-set-suggested-file-name
-		chooseFile.setSelectedFile(new File("mandelbrot.bmp"));
-		FileNameExtensionFilter filter = new FileNameExtensionFilter("BMP file", ".bmp");
-		chooseFile.setFileFilter(filter);
+		chooseFile.setSelectedFile(new File(suggestedName));
+		chooseFile.addChoosableFileFilter(iterationFilter); // ignored once added
+		chooseFile.setFileFilter(bitmapFilter);
 		int returnedStatus = chooseFile.showSaveDialog(null);
 		if (returnedStatus == JFileChooser.APPROVE_OPTION) {
 			theSaveFile = chooseFile.getSelectedFile();
+			if (chooseFile.getFileFilter() == iterationFilter
+					&& !isIterationFile(theSaveFile)) {
+				String name = theSaveFile.getName();
+				if (name.toLowerCase().endsWith(".bmp")) name = name.substring(0, name.length() - 4);
+				theSaveFile = new File(theSaveFile.getParentFile(),
+						name + "." + IterationFile.EXTENSION);
+			}
 		}
 
 		return theSaveFile;
 	}
 
+	/**
+	 * @return true if a file is to hold iteration data rather than a bitmap
+	 */
+	public static boolean isIterationFile(File file) {
+		return file.getName().toLowerCase().endsWith("." + IterationFile.EXTENSION);
+	}
+
 }
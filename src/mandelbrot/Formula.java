@@ -0,0 +1,439 @@
+package mandelbrot;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * The operation that is repeated to decide whether a complex number c belongs
+ * to a fractal. The Mandelbrot set repeats z = z^2 + c; the others offered here
+ * are the Multibrot sets (z = z^n + c), the Burning Ship (z = (|Re z| +
+ * i|Im z|)^2 + c) and the Tricorn (z = conj(z)^2 + c). All of them use the
+ * threshold and MAX_ITERATIONS of ComplexValue, so the order of a number and
+ * its color mean the same thing whichever formula produced them.
+ *
+ * <p>
+ * Each formula is its own final class with its own copies of the loops over
+ * a row of pixels: of c, for the set itself and its quick frames, and of z,
+ * for Julia sets. The choice of formula is made once per row, and inside the
+ * row every call goes to that class's private kernel, which the JIT can
+ * inline; no formula slows down the loop of another.
+ */
+public abstract class Formula {
+	/**
+	 * z = z^2 + c; the kernel is ComplexValue's own
+	 */
+	public static final Formula MANDELBROT = new Mandelbrot();
+	/**
+	 * z = (|Re z| + i|Im z|)^2 + c
+	 */
+	public static final Formula BURNING_SHIP = new BurningShip();
+	/**
+	 * z = conj(z)^2 + c
+	 */
+	public static final Formula TRICORN = new Tricorn();
+	/**
+	 * escape when |z|^2 reaches this, i.e. |z| reaches THRESHOLD
+	 */
+	static final double ESCAPE = ComplexValue.THRESHOLD * ComplexValue.THRESHOLD;
+	/**
+	 * powers offered for Multibrot sets
+	 */
+	private static final int MIN_POWER = 3, MAX_POWER = 8;
+	private static final String MULTIBROT = "multibrot";
+
+	/**
+	 * the formulas a user can choose between
+	 */
+	private static final Formula[] STANDARD = { MANDELBROT, multibrot(3),
+			multibrot(4), BURNING_SHIP, TRICORN };
+
+	/**
+	 * only the classes in this file are formulas
+	 */
+	private Formula() {}
+
+	/**
+	 * @return the formulas a user can choose between
+	 */
+	public static Formula[] standard() {
+		return STANDARD.clone();
+	}
+
+	/**
+	 * @param power the n in z = z^n + c, from 3 to 8
+	 * @return the Multibrot formula of that power
+	 */
+	public static Formula multibrot(int power) {
+		if (power < MIN_POWER || power > MAX_POWER)
+			throw new IllegalArgumentException("Multibrot power must be from "
+					+ MIN_POWER + " to " + MAX_POWER + ": " + power);
+		return new Multibrot(power);
+	}
+
+	/**
+	 * @param name a name as returned by getName()
+	 * @return the formula of that name, or null if there is none
+	 */
+	public static Formula forName(String name) {
+		if (name.equals(MANDELBROT.getName())) return MANDELBROT;
+		if (name.equals(BURNING_SHIP.getName())) return BURNING_SHIP;
+		if (name.equals(TRICORN.getName())) return TRICORN;
+		if (name.startsWith(MULTIBROT)) {
+			try {
+				int power = Integer.parseInt(name.substring(MULTIBROT.length()));
+				if (power >= MIN_POWER && power <= MAX_POWER) return multibrot(power);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return a short lower-case name, safe in URLs and file names, that
+	 * identifies this formula in caches and saved files
+	 */
+	public abstract String getName();
+
+	/**
+	 * @param zReal the real part of the starting z
+	 * @param zImaginary the imaginary part of the starting z
+	 * @param cReal the real part of c
+	 * @param cImaginary the imaginary part of c
+	 * @return the number of times z is redefined before reaching the
+	 * threshold, at most MAX_ITERATIONS
+	 */
+	public abstract int computeOrder(double zReal, double zImaginary,
+			double cReal, double cImaginary);
+
+	/**
+	 * @return the order of c, starting from z = 0
+	 */
+	public int computeOrder(double cReal, double cImaginary) {
+		return computeOrder(0d, 0d, cReal, cImaginary);
+	}
+
+	/**
+	 * find the orders of a run of pixels along one row
+	 * @param orders where to put the orders
+	 * @param offset where in orders the first goes
+	 * @param count how many pixels
+	 * @param real0 the real value of the first pixel
+	 * @param realStep the difference in real value between neighbours
+	 * @param imaginary the imaginary value of the row
+	 */
+	public void fillRow(int[] orders, int offset, int count,
+			double real0, double realStep, double imaginary) {
+		fillRow(orders, offset, count, real0, realStep, imaginary,
+				ComplexValue.MAX_ITERATIONS);
+	}
+
+	/**
+	 * the same, giving up after fewer iterations than usual; for quick
+	 * approximate frames
+	 * @param maxIterations the most iterations to make, at most
+	 * MAX_ITERATIONS; pixels that do not escape within it get this order
+	 */
+	public abstract void fillRow(int[] orders, int offset, int count,
+			double real0, double realStep, double imaginary, int maxIterations);
+
+	/**
+	 * find the orders of a run of pixels along one row of the Julia set of c:
+	 * the pixels are starting values of z, and c is the same for all
+	 * @param zReal0 the real value of the first pixel
+	 * @param zRealStep the difference in real value between neighbours
+	 * @param zImaginary the imaginary value of the row
+	 */
+	public abstract void fillJuliaRow(int[] orders, int offset, int count,
+			double zReal0, double zRealStep, double zImaginary,
+			double cReal, double cImaginary);
+
+	/**
+	 * follow the orbit of c from z = 0 until it reaches the threshold, for
+	 * at most as many steps as the arrays hold
+	 * @param reals where to put the real part of each z after the first
+	 * @param imaginaries where to put the imaginary part of each z
+	 * @return how many points were put in the arrays
+	 */
+	public abstract int orbit(double cReal, double cImaginary, double[] reals,
+			double[] imaginaries);
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Formula && ((Formula) o).getName().equals(getName());
+	}
+
+	@Override
+	public int hashCode() {
+		return getName().hashCode();
+	}
+
+	/**
+	 * z = z^2 + c
+	 */
+	private static final class Mandelbrot extends Formula {
+		@Override
+		public String getName() {
+			return "mandelbrot";
+		}
+
+		@Override
+		public String toString() {
+			return "Mandelbrot";
+		}
+
+		@Override
+		public int computeOrder(double zReal, double zImaginary,
+				double cReal, double cImaginary) {
+			return ComplexValue.computeOrder(zReal, zImaginary, cReal, cImaginary);
+		}
+
+		@Override
+		public void fillRow(int[] orders, int offset, int count,
+				double real0, double realStep, double imaginary, int maxIterations) {
+			for (int i = 0; i < count; i++) {
+				orders[offset + i] = ComplexValue.computeOrder(0d, 0d,
+						real0 + i * realStep, imaginary, maxIterations);
+			}
+		}
+
+		@Override
+		public void fillJuliaRow(int[] orders, int offset, int count,
+				double zReal0, double zRealStep, double zImaginary,
+				double cReal, double cImaginary) {
+			for (int i = 0; i < count; i++) {
+				orders[offset + i] = ComplexValue.computeOrder(zReal0 + i * zRealStep,
+						zImaginary, cReal, cImaginary);
+			}
+		}
+
+		@Override
+		public int orbit(double cReal, double cImaginary, double[] reals,
+				double[] imaginaries) {
+			return ComplexValue.iterate(0d, 0d, cReal, cImaginary,
+					Math.min(reals.length, imaginaries.length), reals, imaginaries);
+		}
+	}
+
+	/**
+	 * z = z^n + c for a whole n of at least 3
+	 */
+	private static final class Multibrot extends Formula {
+		private final int power;
+
+		Multibrot(int power) {
+			this.power = power;
+		}
+
+		@Override
+		public String getName() {
+			return MULTIBROT + power;
+		}
+
+		@Override
+		public String toString() {
+			return "Multibrot z^" + power;
+		}
+
+		@Override
+		public int computeOrder(double zReal, double zImaginary,
+				double cReal, double cImaginary) {
+			return order(power, zReal, zImaginary, cReal, cImaginary,
+					ComplexValue.MAX_ITERATIONS, null, null);
+		}
+
+		@Override
+		public void fillRow(int[] orders, int offset, int count,
+				double real0, double realStep, double imaginary, int maxIterations) {
+			for (int i = 0; i < count; i++) {
+				orders[offset + i] = order(power, 0d, 0d, real0 + i * realStep, imaginary,
+						maxIterations, null, null);
+			}
+		}
+
+		@Override
+		public void fillJuliaRow(int[] orders, int offset, int count,
+				double zReal0, double zRealStep, double zImaginary,
+				double cReal, double cImaginary) {
+			for (int i = 0; i < count; i++) {
+				orders[offset + i] = order(power, zReal0 + i * zRealStep, zImaginary,
+						cReal, cImaginary, ComplexValue.MAX_ITERATIONS, null, null);
+			}
+		}
+
+		@Override
+		public int orbit(double cReal, double cImaginary, double[] reals,
+				double[] imaginaries) {
+			return order(power, 0d, 0d, cReal, cImaginary,
+					Math.min(reals.length, imaginaries.length), reals, imaginaries);
+		}
+
+		/**
+		 * the one copy of the operation; see ComplexValue.iterate()
+		 */
+		private static int order(int power, double zReal, double zImaginary,
+				double cReal, double cImaginary, int maxIterations, double[] reals,
+				double[] imaginaries) {
+			double pReal, pImaginary, temp;
+			int count = 0;
+			while (zReal * zReal + zImaginary * zImaginary < ESCAPE
+					&& count < maxIterations) {
+				pReal = zReal;
+				pImaginary = zImaginary;
+				for (int k = 1; k < power; k++) {
+					temp = pReal * zReal - pImaginary * zImaginary;
+					pImaginary = pReal * zImaginary + pImaginary * zReal;
+					pReal = temp;
+				}
+				zReal = pReal + cReal;
+				zImaginary = pImaginary + cImaginary;
+				if (reals != null) {
+					reals[count] = zReal;
+					imaginaries[count] = zImaginary;
+				}
+				count++;
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * z = (|Re z| + i|Im z|)^2 + c
+	 */
+	private static final class BurningShip extends Formula {
+		@Override
+		public String getName() {
+			return "burningship";
+		}
+
+		@Override
+		public String toString() {
+			return "Burning Ship";
+		}
+
+		@Override
+		public int computeOrder(double zReal, double zImaginary,
+				double cReal, double cImaginary) {
+			return order(zReal, zImaginary, cReal, cImaginary, ComplexValue.MAX_ITERATIONS,
+					null, null);
+		}
+
+		@Override
+		public void fillRow(int[] orders, int offset, int count,
+				double real0, double realStep, double imaginary, int maxIterations) {
+			for (int i = 0; i < count; i++) {
+				orders[offset + i] = order(0d, 0d, real0 + i * realStep, imaginary,
+						maxIterations, null, null);
+			}
+		}
+
+		@Override
+		public void fillJuliaRow(int[] orders, int offset, int count,
+				double zReal0, double zRealStep, double zImaginary,
+				double cReal, double cImaginary) {
+			for (int i = 0; i < count; i++) {
+				orders[offset + i] = order(zReal0 + i * zRealStep, zImaginary,
+						cReal, cImaginary, ComplexValue.MAX_ITERATIONS, null, null);
+			}
+		}
+
+		@Override
+		public int orbit(double cReal, double cImaginary, double[] reals,
+				double[] imaginaries) {
+			return order(0d, 0d, cReal, cImaginary,
+					Math.min(reals.length, imaginaries.length), reals, imaginaries);
+		}
+
+		/**
+		 * the one copy of the operation; see ComplexValue.iterate()
+		 */
+		private static int order(double zReal, double zImaginary,
+				double cReal, double cImaginary, int maxIterations, double[] reals,
+				double[] imaginaries) {
+			double temp;
+			int count = 0;
+			while (zReal * zReal + zImaginary * zImaginary < ESCAPE
+					&& count < maxIterations) {
+				temp = zReal * zReal - zImaginary * zImaginary + cReal;
+				zImaginary = Math.abs(2 * zReal * zImaginary) + cImaginary;
+				zReal = temp;
+				if (reals != null) {
+					reals[count] = zReal;
+					imaginaries[count] = zImaginary;
+				}
+				count++;
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * z = conj(z)^2 + c
+	 */
+	private static final class Tricorn extends Formula {
+		@Override
+		public String getName() {
+			return "tricorn";
+		}
+
+		@Override
+		public String toString() {
+			return "Tricorn";
+		}
+
+		@Override
+		public int computeOrder(double zReal, double zImaginary,
+				double cReal, double cImaginary) {
+			return order(zReal, zImaginary, cReal, cImaginary, ComplexValue.MAX_ITERATIONS,
+					null, null);
+		}
+
+		@Override
+		public void fillRow(int[] orders, int offset, int count,
+				double real0, double realStep, double imaginary, int maxIterations) {
+			for (int i = 0; i < count; i++) {
+				orders[offset + i] = order(0d, 0d, real0 + i * realStep, imaginary,
+						maxIterations, null, null);
+			}
+		}
+
+		@Override
+		public void fillJuliaRow(int[] orders, int offset, int count,
+				double zReal0, double zRealStep, double zImaginary,
+				double cReal, double cImaginary) {
+			for (int i = 0; i < count; i++) {
+				orders[offset + i] = order(zReal0 + i * zRealStep, zImaginary,
+						cReal, cImaginary, ComplexValue.MAX_ITERATIONS, null, null);
+			}
+		}
+
+		@Override
+		public int orbit(double cReal, double cImaginary, double[] reals,
+				double[] imaginaries) {
+			return order(0d, 0d, cReal, cImaginary,
+					Math.min(reals.length, imaginaries.length), reals, imaginaries);
+		}
+
+		/**
+		 * the one copy of the operation; see ComplexValue.iterate()
+		 */
+		private static int order(double zReal, double zImaginary,
+				double cReal, double cImaginary, int maxIterations, double[] reals,
+				double[] imaginaries) {
+			double temp;
+			int count = 0;
+			while (zReal * zReal + zImaginary * zImaginary < ESCAPE
+					&& count < maxIterations) {
+				temp = zReal * zReal - zImaginary * zImaginary + cReal;
+				zImaginary = -2 * zReal * zImaginary + cImaginary;
+				zReal = temp;
+				if (reals != null) {
+					reals[count] = zReal;
+					imaginaries[count] = zImaginary;
+				}
+				count++;
+			}
+			return count;
+		}
+	}
+}
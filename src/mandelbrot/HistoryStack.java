@@ -1,10 +1,14 @@
 package mandelbrot;
 
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
 /**
  * @author John Bannister <john_bannister@my.uri.edu>
- * a FILO buffer that holds the history of ComplexSets created
+ * a FILO buffer that holds the history of ComplexSets created; iterating
+ * over it visits them from the most recent to the oldest
  */
-public class HistoryStack implements Stack<ComplexSet> {
+public class HistoryStack implements Stack<ComplexSet>, Iterable<ComplexSet> {
 	/**
 	 * holds the data for the Node entered to the Stack most recently
 	 */
@@ -39,11 +43,40 @@ public class HistoryStack implements Stack<ComplexSet> {
 		return head.getData();
 	}
 
+	/**
+	 * @return the ComplexSet that peek() will return after the next pop(),
+	 * or null if there is none
+	 */
+	public ComplexSet peekPrevious() {
+		if (head == null || head.getNext() == null) return null;
+		return head.getNext().getData();
+	}
+
 	@Override
 	public boolean isEmpty() {
 		return head == null;
 	}
 
+	@Override
+	public Iterator<ComplexSet> iterator() {
+		return new Iterator<ComplexSet>() {
+			private Node node = head;
+
+			@Override
+			public boolean hasNext() {
+				return node != null;
+			}
+
+			@Override
+			public ComplexSet next() {
+				if (node == null) throw new NoSuchElementException();
+				ComplexSet data = node.getData();
+				node = node.getNext();
+				return data;
+			}
+		};
+	}
+
 	/**
 	 * @author John Bannister <john_bannister@my.uri.edu>
 	 * represents Nodes in the stack which hold, in this case, ComplexSets
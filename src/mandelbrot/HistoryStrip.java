@@ -0,0 +1,185 @@
+package mandelbrot;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * A JPanel of thumbnails of the most recent views in the history, the
+ * current one first and outlined. Clicking a thumbnail goes straight back
+ * to that view.
+ *
+ * <p>
+ * Every view in the history keeps its iteration buffer, so a thumbnail is
+ * made by averaging the colors of blocks of it rather than by rendering
+ * again. That is done as background work on the shared PriorityScheduler,
+ * a row at a time, so it never holds up a foreground render.
+ */
+@SuppressWarnings("serial")
+public class HistoryStrip extends JPanel {
+	/**
+	 * thumbnails are this many pixels on a side
+	 */
+	public static final int THUMB_SIZE = 60;
+	/**
+	 * the space around thumbnails, and how many fit across and down
+	 */
+	private static final int GAP = 5, ACROSS = 3, DOWN = 6;
+	/**
+	 * each thumbnail pixel averages a STEP x STEP block of the set
+	 */
+	private static final int STEP = ComplexSet.COLS / THUMB_SIZE;
+
+	private Main parent;
+	/**
+	 * the views shown, most recent first
+	 */
+	private List<ComplexSet> sets = new ArrayList<ComplexSet>();
+	/**
+	 * the finished thumbnails, and the views whose thumbnails are being
+	 * made; only touched on the event dispatch thread
+	 */
+	private Map<ComplexSet, BufferedImage> thumbnails =
+			new IdentityHashMap<ComplexSet, BufferedImage>();
+	private Set<ComplexSet> pending =
+			Collections.newSetFromMap(new IdentityHashMap<ComplexSet, Boolean>());
+
+	public HistoryStrip(Main parent) {
+		super();
+		setBounds(ComplexSet.COLS + 2 * ComplexImage.HORIZ_OFFSET,
+				JuliaPreview.SIZE + 2 * ComplexImage.VERT_OFFSET,
+				JuliaPreview.SIZE, DOWN * (THUMB_SIZE + GAP) + GAP); // positions and sizes this control
+
+		this.parent = parent;
+		addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				jumpTo(e.getX(), e.getY());
+			}
+		});
+	}
+
+	/**
+	 * @see javax.swing.JComponent#getPreferredSize()
+	 */
+	public Dimension getPreferredSize() {
+		return new Dimension(getWidth(), getHeight());
+	}
+
+	/**
+	 * show the history as it is now, making thumbnails of views new to it
+	 * @param history the history, most recent first
+	 */
+	public void setHistory(Iterable<ComplexSet> history) {
+		Main.log(HistoryStrip.class.getSimpleName() + ".setHistory() entered");
+
+		sets.clear();
+		for (ComplexSet set : history) {
+			if (sets.size() == ACROSS * DOWN) break;
+			sets.add(set);
+		}
+		thumbnails.keySet().retainAll(sets);
+		for (ComplexSet set : sets) {
+			if (!thumbnails.containsKey(set) && pending.add(set))
+				PriorityScheduler.shared().submitBackground(new Thumbnail(set));
+		}
+		repaint();
+	}
+
+	/**
+	 * go back to the view whose thumbnail is at a point of the strip
+	 */
+	private void jumpTo(int x, int y) {
+		int column = (x - GAP) / (THUMB_SIZE + GAP), row = (y - GAP) / (THUMB_SIZE + GAP);
+		if (x < GAP || y < GAP || column >= ACROSS) return;
+		int index = row * ACROSS + column;
+		if (index > 0 && index < sets.size()) parent.showHistory(sets.get(index));
+	}
+
+	/**
+	 * draw the thumbnails, grey until they are made
+	 * @see javax.swing.JComponent#paint(java.awt.Graphics)
+	 */
+	@Override
+	public void paint(Graphics g) {
+		super.paint(g);
+		for (int i = 0; i < sets.size(); i++) {
+			int x = GAP + i % ACROSS * (THUMB_SIZE + GAP);
+			int y = GAP + i / ACROSS * (THUMB_SIZE + GAP);
+			BufferedImage thumbnail = thumbnails.get(sets.get(i));
+			if (thumbnail != null) {
+				g.drawImage(thumbnail, x, y, null);
+			} else {
+				g.setColor(Color.DARK_GRAY);
+				g.fillRect(x, y, THUMB_SIZE, THUMB_SIZE);
+			}
+			if (i == 0) {
+				g.setColor(Color.BLACK);
+				g.drawRect(x - 2, y - 2, THUMB_SIZE + 3, THUMB_SIZE + 3);
+			}
+		}
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * makes one thumbnail a row at a time, as background work
+	 */
+	private final class Thumbnail implements PriorityScheduler.Steps {
+		private final ComplexSet set;
+		private final int[] rgb = new int[THUMB_SIZE * THUMB_SIZE];
+		private int row;
+
+		Thumbnail(ComplexSet set) {
+			this.set = set;
+		}
+
+		@Override
+		public boolean step() {
+			int[] orders = set.getOrders();
+			for (int tx = 0; tx < THUMB_SIZE; tx++) {
+				int red = 0, green = 0, blue = 0;
+				for (int y = row * STEP; y < (row + 1) * STEP; y++) {
+					for (int x = tx * STEP; x < (tx + 1) * STEP; x++) {
+						int color = ComplexValue.colorOf(orders[y * ComplexSet.COLS + x]);
+						red += (color >> 16) & 0xFF;
+						green += (color >> 8) & 0xFF;
+						blue += color & 0xFF;
+					}
+				}
+				int n = STEP * STEP;
+				rgb[row * THUMB_SIZE + tx] = (red / n) << 16 | (green / n) << 8 | blue / n;
+			}
+			if (++row < THUMB_SIZE) return true;
+
+			final BufferedImage image = new BufferedImage(THUMB_SIZE, THUMB_SIZE,
+					BufferedImage.TYPE_INT_RGB);
+			image.getRaster().setDataElements(0, 0, THUMB_SIZE, THUMB_SIZE, rgb);
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					pending.remove(set);
+					if (sets.contains(set)) {
+						thumbnails.put(set, image);
+						repaint();
+					}
+				}
+			});
+			return false;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package mandelbrot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * The view shown on startup, precomputed and packaged beside these classes
+ * as the resource home.orders.gz, so the first frame needs no rendering.
+ * The resource holds the view and kernel it was made with, then one byte
+ * per order, row by row, all gzipped. It is only used if everything it was
+ * made with matches the view asked for; otherwise the view is rendered as
+ * usual.
+ *
+ * <p>
+ * Run this class to make the resource again after changing the home view
+ * or the kernel: java mandelbrot.HomeView [file].
+ */
+final class HomeView {
+	/**
+	 * the name of the resource, beside this class
+	 */
+	static final String RESOURCE = "home.orders.gz";
+	/**
+	 * identifies the resource's format
+	 */
+	private static final int MAGIC = 0x4D484F4D, VERSION = 1;
+
+	private HomeView() {}
+
+	/**
+	 * @return the home set, read from the resource if it was made for this
+	 * view and otherwise rendered on all cores
+	 */
+	static ComplexSet homeSet(double zoom, double zoomStep, int xOffset, int yOffset,
+			Formula formula) {
+		Main.log(HomeView.class.getSimpleName() + ".homeSet() entered");
+
+		int[] orders = load(zoom, zoomStep, xOffset, yOffset, formula);
+		if (orders != null)
+			return new ComplexSet(zoom, zoomStep, xOffset, yOffset, formula, orders);
+		Main.log("no usable " + RESOURCE + "; rendering the home view");
+		return new ComplexSet(zoom, zoomStep, xOffset, yOffset, formula, (ComplexSet) null);
+	}
+
+	/**
+	 * @return the orders in the resource, or null if it is missing, damaged
+	 * or was made for something else
+	 */
+	private static int[] load(double zoom, double zoomStep, int xOffset, int yOffset,
+			Formula formula) {
+		InputStream resource = HomeView.class.getResourceAsStream(RESOURCE);
+		if (resource == null) return null;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new GZIPInputStream(resource, 1 << 16), 1 << 16));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+				if (!in.readUTF().equals(formula.getName())
+						|| in.readDouble() != zoom || in.readDouble() != zoomStep
+						|| in.readInt() != xOffset || in.readInt() != yOffset
+						|| in.readInt() != ComplexSet.COLS || in.readInt() != ComplexSet.ROWS
+						|| in.readInt() != ComplexValue.MAX_ITERATIONS
+						|| in.readDouble() != ComplexValue.THRESHOLD)
+					return null;
+				byte[] bytes = new byte[ComplexSet.COLS * ComplexSet.ROWS];
+				in.readFully(bytes);
+				int[] orders = new int[bytes.length];
+				for (int i = 0; i < bytes.length; i++) orders[i] = bytes[i] & 0xFF;
+				return orders;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("Error reading " + RESOURCE + "!");
+			return null;
+		}
+	}
+
+	/**
+	 * render the home view and write it as the resource
+	 * @param args the file to write, src/mandelbrot/home.orders.gz if none
+	 */
+	public static void main(String[] args) throws IOException {
+		if (ComplexValue.MAX_ITERATIONS > 0xFF)
+			throw new IllegalStateException("orders no longer fit in a byte");
+		String file = args.length > 0 ? args[0] : "src/mandelbrot/" + RESOURCE;
+		Formula formula = Formula.MANDELBROT;
+		ComplexSet set = new ComplexSet(ComplexImage.HOME_ZOOM, ComplexImage.HOME_ZOOM_STEP,
+				0, 0, formula);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(new FileOutputStream(file))));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(formula.getName());
+			out.writeDouble(set.getZoom());
+			out.writeDouble(set.getzoomStep());
+			out.writeInt(set.getxOffset());
+			out.writeInt(set.getyOffset());
+			out.writeInt(ComplexSet.COLS);
+			out.writeInt(ComplexSet.ROWS);
+			out.writeInt(ComplexValue.MAX_ITERATIONS);
+			out.writeDouble(ComplexValue.THRESHOLD);
+			for (int order : set.getOrders()) out.writeByte(order);
+		} finally {
+			out.close();
+		}
+	}
+}
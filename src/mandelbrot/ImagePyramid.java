@@ -0,0 +1,270 @@
+package mandelbrot;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * The bitmaps of views already shown, at every scale they were shown at, so
+ * that a view not yet rendered can be pieced together at once from the
+ * stored levels nearest its scale, until its own render arrives.
+ *
+ * <p>
+ * Each bitmap is kept as a mipmap: beside the bitmap itself are copies at
+ * half, a quarter and an eighth of its resolution, each pixel the mean of
+ * four in the one before. A view zoomed out from a kept one is drawn from
+ * the copy whose pixels are nearest the size of its own, instead of
+ * shrinking the full bitmap and losing most of its pixels to aliasing.
+ *
+ * <p>
+ * The levels are held to a memory cap. When a new level would exceed it,
+ * levels not drawn in the latest frame go first, coarsest first; only if
+ * that is not enough do the least recently drawn levels go.
+ *
+ * <p>
+ * Only used on the event dispatch thread.
+ */
+final class ImagePyramid {
+	/**
+	 * levels more than this many times coarser or finer than a view are of
+	 * no use drawing it
+	 */
+	private static final double MAX_SCALE = 64d;
+	/**
+	 * each bitmap is kept at its own resolution and this many halvings of it
+	 */
+	private static final int HALVINGS = 3;
+
+	private final long maxBytes;
+	private long bytes;
+	private final List<Level> levels = new ArrayList<Level>();
+	/**
+	 * counts frames drawn; a level records the last frame it was drawn in
+	 */
+	private long frame;
+
+	/**
+	 * @param maxBytes the most memory the bitmaps may take
+	 */
+	ImagePyramid(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * keep the bitmap of a set and its halvings, replacing any kept for the
+	 * same view
+	 * @param set the set the bitmap shows
+	 * @param image the bitmap, which must not be changed afterwards
+	 */
+	void add(ComplexSet set, BufferedImage image) {
+		Level old = find(set);
+		if (old != null) {
+			if (old.image == image) return;
+			for (Iterator<Level> i = levels.iterator(); i.hasNext();) {
+				Level level = i.next();
+				if (level.sameView(old)) {
+					i.remove();
+					bytes -= level.bytes();
+				}
+			}
+		}
+		Level full = null;
+		for (int step = 1; step <= 1 << HALVINGS; step *= 2) {
+			if (step > 1) image = halve(image);
+			Level level = new Level(set.getZoom(), set.getxOffset(), set.getyOffset(),
+					set.getFormula(), image, step);
+			if (full == null) full = level;
+			level.lastUsed = frame;
+			levels.add(level);
+			bytes += level.bytes();
+		}
+		while (bytes > maxBytes && levels.size() > 1) remove(victim(full));
+	}
+
+	/**
+	 * @return a bitmap of half the width and height, each pixel the mean of
+	 * the four it covers
+	 */
+	private static BufferedImage halve(BufferedImage image) {
+		int width = image.getWidth(), height = image.getHeight();
+		int[] rgb = image.getRGB(0, 0, width, height, null, 0, width);
+		int halfWidth = width / 2, halfHeight = height / 2;
+		int[] half = new int[halfWidth * halfHeight];
+		for (int y = 0; y < halfHeight; y++) {
+			for (int x = 0; x < halfWidth; x++) {
+				int i = 2 * y * width + 2 * x;
+				int a = rgb[i], b = rgb[i + 1], c = rgb[i + width], d = rgb[i + width + 1];
+				int color = 0;
+				for (int shift = 0; shift <= 16; shift += 8) {
+					int sum = (a >> shift & 0xFF) + (b >> shift & 0xFF) + (c >> shift & 0xFF)
+							+ (d >> shift & 0xFF);
+					color |= (sum + 2) / 4 << shift;
+				}
+				half[y * halfWidth + x] = color;
+			}
+		}
+		BufferedImage halved = new BufferedImage(halfWidth, halfHeight,
+				BufferedImage.TYPE_INT_RGB);
+		halved.setRGB(0, 0, halfWidth, halfHeight, half, 0, halfWidth);
+		return halved;
+	}
+
+	/**
+	 * @return the kept bitmap of exactly this set's view at full
+	 * resolution, or null
+	 */
+	BufferedImage imageOf(ComplexSet set) {
+		Level level = find(set);
+		return level == null ? null : level.image;
+	}
+
+	/**
+	 * start drawing a new frame; the levels used to draw it should be
+	 * passed to markUsed()
+	 */
+	void beginFrame() {
+		frame++;
+	}
+
+	/**
+	 * record that a level was drawn in the current frame
+	 */
+	void markUsed(Level level) {
+		level.lastUsed = frame;
+	}
+
+	/**
+	 * @param zoom the zoom of the view to draw
+	 * @param formula the formula of the view to draw
+	 * @return the levels of that formula that could help draw the view,
+	 * those whose pixels are nearest the size of the view's first, the finer
+	 * first of two equally near
+	 */
+	List<Level> nearest(final double zoom, Formula formula) {
+		List<Level> useful = new ArrayList<Level>();
+		for (Level level : levels) {
+			double scale = level.zoom / zoom;
+			if (level.formula.equals(formula) && scale < MAX_SCALE && scale > 1d / MAX_SCALE)
+				useful.add(level);
+		}
+		Collections.sort(useful, new Comparator<Level>() {
+			@Override
+			public int compare(Level a, Level b) {
+				double da = Math.abs(Math.log(a.resolution() / zoom));
+				double db = Math.abs(Math.log(b.resolution() / zoom));
+				if (da != db) return Double.compare(da, db);
+				return Double.compare(b.resolution(), a.resolution());
+			}
+		});
+		return useful;
+	}
+
+	/**
+	 * @return the level to evict to make room, never the one just added
+	 */
+	private Level victim(Level added) {
+		Level victim = null;
+		for (Level level : levels) {
+			if (level == added || level.lastUsed == frame) continue;
+			if (victim == null || level.resolution() < victim.resolution()
+					|| (level.resolution() == victim.resolution()
+							&& level.lastUsed < victim.lastUsed))
+				victim = level;
+		}
+		if (victim != null) return victim;
+		for (Level level : levels) {
+			if (level != added && (victim == null || level.lastUsed < victim.lastUsed))
+				victim = level;
+		}
+		return victim;
+	}
+
+	private Level find(ComplexSet set) {
+		for (Level level : levels) {
+			if (level.step == 1 && level.zoom == set.getZoom()
+					&& level.xOffset == set.getxOffset() && level.yOffset == set.getyOffset()
+					&& level.formula.equals(set.getFormula()))
+				return level;
+		}
+		return null;
+	}
+
+	private void remove(Level level) {
+		for (Iterator<Level> i = levels.iterator(); i.hasNext();) {
+			if (i.next() == level) {
+				i.remove();
+				bytes -= level.bytes();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * the bitmap of one view at one resolution, and the view it shows
+	 */
+	static final class Level {
+		private final double zoom;
+		private final int xOffset, yOffset;
+		private final Formula formula;
+		private final BufferedImage image;
+		/**
+		 * how many pixels of the view, across and down, each pixel of the
+		 * bitmap covers: 1 for the bitmap itself, 2 for its first halving
+		 */
+		private final int step;
+		private long lastUsed;
+
+		Level(double zoom, int xOffset, int yOffset, Formula formula, BufferedImage image,
+				int step) {
+			this.zoom = zoom;
+			this.xOffset = xOffset;
+			this.yOffset = yOffset;
+			this.formula = formula;
+			this.image = image;
+			this.step = step;
+		}
+
+		long bytes() {
+			return 4L * image.getWidth() * image.getHeight();
+		}
+
+		/**
+		 * @return the bitmap's pixels per unit of the plane
+		 */
+		double resolution() {
+			return zoom / step;
+		}
+
+		boolean sameView(Level other) {
+			return zoom == other.zoom && xOffset == other.xOffset && yOffset == other.yOffset
+					&& formula.equals(other.formula);
+		}
+
+		double getZoom() {
+			return zoom;
+		}
+
+		int getxOffset() {
+			return xOffset;
+		}
+
+		int getyOffset() {
+			return yOffset;
+		}
+
+		BufferedImage getImage() {
+			return image;
+		}
+
+		int getStep() {
+			return step;
+		}
+	}
+}
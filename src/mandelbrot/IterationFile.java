@@ -0,0 +1,857 @@
+package mandelbrot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * Reads and writes iteration buffers, the order of every pixel of a view,
+ * in a compact binary format: files ending .mbit. A bitmap keeps only the
+ * colors; this keeps the orders themselves and the view they belong to.
+ *
+ * <p>
+ * The buffer is cut into square tiles, each compressed on its own, so tiles
+ * are encoded and decoded in parallel, a file can be written and read as a
+ * stream a tile at a time however large the image, and any one tile can be
+ * read without the rest. Each tile's orders are written row by row as
+ * variable-length integers, either as they are or as the difference from
+ * the order above, whichever deflates smaller, and then deflated. Deflate
+ * turns the long runs of equal orders that cover most views into a few
+ * bytes each; run-length coding them first only gets in its way. Rows
+ * repeating the row above, common across bands of one order, come out as
+ * runs of zeros once differenced.
+ *
+ * <p>
+ * The format, all numbers big-endian as written by DataOutputStream:
+ * <pre>
+ * header:  int MAGIC ("MBIT"), int VERSION,
+ *          UTF formula name, double zoom, double zoomStep,
+ *          int xOffset, int yOffset, int width, int height, int tileSize,
+ *          int maxIterations, double threshold
+ * tiles:   one record per tile, in any order:
+ *          int column, int row, byte filter, int encoded length,
+ *          int deflated length, the deflated bytes (raw deflate, no zlib
+ *          header)
+ * index:   for each tile, row by row: long offset of its record from the
+ *          start of the file, int deflated length
+ * trailer: long offset of the index, int END_MAGIC ("TIBM")
+ * </pre>
+ * A tile at column c and row r covers pixels from (c * tileSize,
+ * r * tileSize); tiles on the right and bottom edges are cut short by the
+ * image. Its encoded bytes are one unsigned LEB128 varint per pixel, row by
+ * row: with filter NONE the order itself, with filter UP the zigzag-encoded
+ * difference of the order from the one above it, or on the tile's first
+ * row from the one to its left, the first pixel's from 0.
+ */
+public final class IterationFile {
+	/**
+	 * the file name extension, without the dot
+	 */
+	public static final String EXTENSION = "mbit";
+	/**
+	 * tiles are this many pixels on a side unless asked otherwise
+	 */
+	public static final int DEFAULT_TILE_SIZE = 64;
+	/**
+	 * identify the format and the end of a complete file
+	 */
+	private static final int MAGIC = 0x4D424954, VERSION = 1, END_MAGIC = 0x5449424D;
+	/**
+	 * the index entry of a tile: a long offset and an int length
+	 */
+	private static final int INDEX_ENTRY = 12;
+	/**
+	 * the trailer: a long offset and an int END_MAGIC
+	 */
+	private static final int TRAILER = 12;
+	/**
+	 * the bytes of a tile record before its deflated bytes
+	 */
+	private static final int RECORD = 17;
+	/**
+	 * the most bytes a varint of an int takes
+	 */
+	private static final int MAX_VARINT = 5;
+	/**
+	 * how a tile's orders were encoded before deflating
+	 */
+	static final byte NONE = 0, UP = 1;
+
+	private IterationFile() {}
+
+	/**
+	 * write a set's orders to a file, encoding tiles on all cores
+	 */
+	public static void write(ComplexSet set, File file) throws IOException {
+		Main.log(IterationFile.class.getSimpleName() + ".write() entered");
+
+		OutputStream out = new FileOutputStream(file);
+		Writer writer;
+		try {
+			writer = new Writer(out, new Header(set, DEFAULT_TILE_SIZE));
+		} catch (IOException | RuntimeException e) {
+			out.close();
+			throw e;
+		}
+		try {
+			writer.write(set.getOrders());
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * encode one tile of a buffer both ways and keep whichever deflates
+	 * smaller
+	 * @param orders the buffer
+	 * @param stride the width of the buffer
+	 * @param x0 the left edge of the tile in the buffer
+	 * @param y0 the top edge of the tile in the buffer
+	 * @param width the width of the tile
+	 * @param height the height of the tile
+	 * @return the encoded tile
+	 */
+	static Encoded encode(int[] orders, int stride, int x0, int y0, int width, int height) {
+		Encoded best = null;
+		for (byte filter = NONE; filter <= UP; filter++) {
+			ByteBuffer encoded = new ByteBuffer(width * height + 16);
+			for (int y = y0; y < y0 + height; y++) {
+				for (int x = x0; x < x0 + width; x++) {
+					int order = orders[y * stride + x];
+					if (filter == NONE) encoded.putVarint(order);
+					else encoded.putVarint(zigzag(order - predict(orders, stride, x0, y0, x, y)));
+				}
+			}
+			Encoded e = new Encoded(filter, encoded.length, deflate(encoded));
+			if (best == null || e.deflated.length < best.deflated.length) best = e;
+		}
+		return best;
+	}
+
+	/**
+	 * @return what filter UP predicts the order at (x, y) of a tile to be
+	 */
+	private static int predict(int[] orders, int stride, int x0, int y0, int x, int y) {
+		if (y > y0) return orders[(y - 1) * stride + x];
+		if (x > x0) return orders[y * stride + x - 1];
+		return 0;
+	}
+
+	private static byte[] deflate(ByteBuffer encoded) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			deflater.setInput(encoded.bytes, 0, encoded.length);
+			deflater.finish();
+			ByteBuffer deflated = new ByteBuffer(encoded.length / 4 + 16);
+			while (!deflater.finished()) {
+				deflated.ensure(deflated.length + 256);
+				deflated.length += deflater.deflate(deflated.bytes, deflated.length,
+						deflated.bytes.length - deflated.length);
+			}
+			return Arrays.copyOf(deflated.bytes, deflated.length);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * inflate and decode one tile
+	 * @param filter how the orders were encoded
+	 * @param deflated the deflated bytes of the tile
+	 * @param encodedLength how many bytes they inflate to
+	 * @param width the width of the tile
+	 * @param height the height of the tile
+	 * @return the orders of the tile, row by row
+	 */
+	static int[] decode(byte filter, byte[] deflated, int encodedLength, int width, int height)
+			throws IOException {
+		if (filter != NONE && filter != UP) throw new IOException("unknown filter " + filter);
+		// every order takes one to MAX_VARINT bytes
+		if (encodedLength < (long) width * height
+				|| encodedLength > MAX_VARINT * (long) width * height)
+			throw new IOException("tile record is damaged");
+		byte[] encoded = new byte[encodedLength];
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(deflated);
+			int length = 0;
+			while (length < encodedLength) {
+				int n = inflater.inflate(encoded, length, encodedLength - length);
+				if (n == 0 && (inflater.finished() || inflater.needsInput()))
+					throw new EOFException("tile ends early");
+				length += n;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("tile is damaged", e);
+		} finally {
+			inflater.end();
+		}
+
+		int[] orders = new int[width * height];
+		int[] at = { 0 };
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int value = readVarint(encoded, at);
+				orders[y * width + x] = filter == NONE ? value
+						: unzigzag(value) + predict(orders, width, 0, 0, x, y);
+			}
+		}
+		if (at[0] != encodedLength) throw new IOException("tile is damaged");
+		return orders;
+	}
+
+	/**
+	 * @return the most bytes deflate can make of encodedLength bytes, by
+	 * zlib's deflateBound() with room to spare
+	 */
+	private static long maxDeflated(int encodedLength) {
+		return encodedLength + (encodedLength >> 12) + (encodedLength >> 14) + 16L;
+	}
+
+	private static int zigzag(int n) {
+		return (n << 1) ^ (n >> 31);
+	}
+
+	private static int unzigzag(int n) {
+		return (n >>> 1) ^ -(n & 1);
+	}
+
+	/**
+	 * @param at the index to read from, moved past the varint
+	 */
+	private static int readVarint(byte[] bytes, int[] at) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 7 * MAX_VARINT; shift += 7) {
+			if (at[0] >= bytes.length) throw new EOFException("tile ends early");
+			int b = bytes[at[0]++];
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) return value;
+		}
+		throw new IOException("tile is damaged");
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * a growable array of bytes
+	 */
+	private static final class ByteBuffer {
+		byte[] bytes;
+		int length;
+
+		ByteBuffer(int capacity) {
+			bytes = new byte[Math.max(16, capacity)];
+		}
+
+		void ensure(int capacity) {
+			if (capacity > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(capacity, 2 * bytes.length));
+		}
+
+		void putVarint(int value) {
+			ensure(length + MAX_VARINT);
+			while ((value & ~0x7F) != 0) {
+				bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			bytes[length++] = (byte) value;
+		}
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * one tile, encoded and deflated
+	 */
+	static final class Encoded {
+		final byte filter;
+		final int encodedLength;
+		final byte[] deflated;
+
+		Encoded(byte filter, int encodedLength, byte[] deflated) {
+			this.filter = filter;
+			this.encodedLength = encodedLength;
+			this.deflated = deflated;
+		}
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * the view an iteration buffer belongs to, how it was computed, and how
+	 * it is cut into tiles
+	 */
+	public static final class Header {
+		private final String formula;
+		private final double zoom, zoomStep;
+		private final int xOffset, yOffset, width, height, tileSize, maxIterations;
+		private final double threshold;
+
+		/**
+		 * @param formula the name of the formula, as Formula.getName()
+		 * @param zoom pixels per unit, as in ComplexSet
+		 * @param zoomStep the zoom step, as in ComplexSet
+		 * @param xOffset the horizontal offset, as in ComplexSet
+		 * @param yOffset the vertical offset, as in ComplexSet
+		 * @param width the width of the buffer in pixels
+		 * @param height the height of the buffer in pixels
+		 * @param tileSize the side of a tile in pixels
+		 * @param maxIterations the most iterations a pixel was given
+		 * @param threshold the escape threshold
+		 */
+		public Header(String formula, double zoom, double zoomStep, int xOffset, int yOffset,
+				int width, int height, int tileSize, int maxIterations, double threshold) {
+			if (formula == null) throw new NullPointerException();
+			if (width <= 0 || height <= 0 || tileSize <= 0)
+				throw new IllegalArgumentException("sizes must be positive");
+			if ((long) width * height > Integer.MAX_VALUE
+					|| (long) width + tileSize - 1 > Integer.MAX_VALUE
+					|| (long) height + tileSize - 1 > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("sizes are too large");
+			this.formula = formula;
+			this.zoom = zoom;
+			this.zoomStep = zoomStep;
+			this.xOffset = xOffset;
+			this.yOffset = yOffset;
+			this.width = width;
+			this.height = height;
+			this.tileSize = tileSize;
+			this.maxIterations = maxIterations;
+			this.threshold = threshold;
+		}
+
+		/**
+		 * the header of a set's buffer
+		 */
+		public Header(ComplexSet set, int tileSize) {
+			this(set.getFormula().getName(), set.getZoom(), set.getzoomStep(), set.getxOffset(),
+					set.getyOffset(), ComplexSet.COLS, ComplexSet.ROWS, tileSize,
+					ComplexValue.MAX_ITERATIONS, ComplexValue.THRESHOLD);
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(formula);
+			out.writeDouble(zoom);
+			out.writeDouble(zoomStep);
+			out.writeInt(xOffset);
+			out.writeInt(yOffset);
+			out.writeInt(width);
+			out.writeInt(height);
+			out.writeInt(tileSize);
+			out.writeInt(maxIterations);
+			out.writeDouble(threshold);
+		}
+
+		static Header read(DataInputStream in) throws IOException {
+			if (in.readInt() != MAGIC) throw new IOException("not an iteration file");
+			int version = in.readInt();
+			if (version != VERSION) throw new IOException("unknown version " + version);
+			try {
+				return new Header(in.readUTF(), in.readDouble(), in.readDouble(), in.readInt(),
+						in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+						in.readDouble());
+			} catch (IllegalArgumentException e) {
+				throw new IOException("header is damaged", e);
+			}
+		}
+
+		public String getFormula() {
+			return formula;
+		}
+
+		public double getZoom() {
+			return zoom;
+		}
+
+		public double getZoomStep() {
+			return zoomStep;
+		}
+
+		public int getxOffset() {
+			return xOffset;
+		}
+
+		public int getyOffset() {
+			return yOffset;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		public int getTileSize() {
+			return tileSize;
+		}
+
+		public int getMaxIterations() {
+			return maxIterations;
+		}
+
+		public double getThreshold() {
+			return threshold;
+		}
+
+		/**
+		 * @return how many tiles there are across the buffer
+		 */
+		public int getTilesAcross() {
+			return (width + tileSize - 1) / tileSize;
+		}
+
+		/**
+		 * @return how many tiles there are down the buffer
+		 */
+		public int getTilesDown() {
+			return (height + tileSize - 1) / tileSize;
+		}
+
+		int tileWidth(int column) {
+			return Math.min(tileSize, width - column * tileSize);
+		}
+
+		int tileHeight(int row) {
+			return Math.min(tileSize, height - row * tileSize);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s %dx%d zoom %s offset (%d, %d), %d iterations, %d pixel tiles",
+					formula, width, height, zoom, xOffset, yOffset, maxIterations, tileSize);
+		}
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 *
+	 * <p>
+	 * Writes an iteration file a tile at a time. Tiles may be given in any
+	 * order and from any thread, so a Renderer's tiles can be written as they
+	 * arrive without the whole image ever being held. They are encoded on an
+	 * executor, at most a few per thread at once, and written as each
+	 * finishes. close() writes the index once every tile has been written.
+	 */
+	public static final class Writer implements Closeable {
+		private final DataOutputStream out;
+		private final Header header;
+		private final Executor executor;
+		/**
+		 * bounds the tiles being encoded at once, and so the memory held
+		 */
+		private final Semaphore inFlight;
+		private final int maxInFlight;
+		/**
+		 * where each tile's record starts, and its deflated length; offset -1
+		 * until it is written. Guarded by this.
+		 */
+		private final long[] offsets;
+		private final int[] lengths;
+		private long position;
+		private IOException failure;
+		private boolean closed;
+
+		/**
+		 * a writer encoding on the common fork-join pool
+		 */
+		public Writer(OutputStream out, Header header) throws IOException {
+			this(out, header, ForkJoinPool.commonPool());
+		}
+
+		/**
+		 * @param out where to write the file; closed by close()
+		 * @param header the view and tiling of the buffer
+		 * @param executor encodes the tiles; each tile is one task
+		 */
+		public Writer(OutputStream out, Header header, Executor executor) throws IOException {
+			if (executor == null) throw new NullPointerException();
+			this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+			this.header = header;
+			this.executor = executor;
+			maxInFlight = 2 * Runtime.getRuntime().availableProcessors();
+			inFlight = new Semaphore(maxInFlight);
+			offsets = new long[header.getTilesAcross() * header.getTilesDown()];
+			lengths = new int[offsets.length];
+			Arrays.fill(offsets, -1L);
+			header.write(this.out);
+			position = this.out.size();
+		}
+
+		/**
+		 * write a whole buffer
+		 * @param orders the order of every pixel, row by row
+		 */
+		public void write(int[] orders) throws IOException {
+			if (orders.length != header.getWidth() * header.getHeight())
+				throw new IllegalArgumentException("buffer is not the size of the header");
+			for (int row = 0; row < header.getTilesDown(); row++) {
+				for (int column = 0; column < header.getTilesAcross(); column++) {
+					write(orders, header.getWidth(), column, row, column * header.getTileSize(),
+							row * header.getTileSize());
+				}
+			}
+		}
+
+		/**
+		 * write one tile; it must lie on the header's grid of tiles
+		 */
+		public void write(Tile tile) throws IOException {
+			int size = header.getTileSize();
+			int column = tile.getX() / size, row = tile.getY() / size;
+			if (tile.getX() % size != 0 || tile.getY() % size != 0
+					|| column >= header.getTilesAcross() || row >= header.getTilesDown()
+					|| tile.getWidth() != header.tileWidth(column)
+					|| tile.getHeight() != header.tileHeight(row))
+				throw new IllegalArgumentException("tile does not fit the header's tiles");
+			if (tile.getOrders() == null) throw new IllegalArgumentException("tile has no orders");
+			write(tile.getOrders(), tile.getWidth(), column, row, 0, 0);
+		}
+
+		private void write(final int[] orders, final int stride, final int column,
+				final int row, final int x0, final int y0) throws IOException {
+			checkFailure();
+			inFlight.acquireUninterruptibly();
+			final int width = header.tileWidth(column), height = header.tileHeight(row);
+			try {
+				CompletableFuture.supplyAsync(() -> encode(orders, stride, x0, y0, width, height),
+						executor).whenComplete((encoded, e) -> {
+							try {
+								if (e != null) fail(new IOException("could not encode a tile", e));
+								else writeRecord(column, row, encoded);
+							} finally {
+								inFlight.release();
+							}
+						});
+			} catch (RuntimeException e) { // the executor would not take it
+				inFlight.release();
+				fail(new IOException("could not encode a tile", e));
+				checkFailure();
+			}
+		}
+
+		private synchronized void writeRecord(int column, int row, Encoded encoded) {
+			if (failure != null) return;
+			int tile = row * header.getTilesAcross() + column;
+			try {
+				if (offsets[tile] >= 0) throw new IOException("tile written twice");
+				offsets[tile] = position;
+				lengths[tile] = encoded.deflated.length;
+				out.writeInt(column);
+				out.writeInt(row);
+				out.writeByte(encoded.filter);
+				out.writeInt(encoded.encodedLength);
+				out.writeInt(encoded.deflated.length);
+				out.write(encoded.deflated);
+				position += RECORD + encoded.deflated.length;
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+
+		private synchronized void fail(IOException e) {
+			if (failure == null) failure = e;
+		}
+
+		private synchronized void checkFailure() throws IOException {
+			if (closed) throw new IOException("writer is closed");
+			if (failure != null) throw failure;
+		}
+
+		/**
+		 * wait for the tiles still being encoded, write the index and close
+		 * the stream
+		 * @throws IOException if writing failed or a tile was never written
+		 */
+		@Override
+		public void close() throws IOException {
+			inFlight.acquireUninterruptibly(maxInFlight);
+			inFlight.release(maxInFlight);
+			synchronized (this) {
+				if (closed) return;
+				closed = true;
+				try {
+					if (failure != null) throw failure;
+					for (long offset : offsets) {
+						if (offset < 0) throw new IOException("a tile was never written");
+					}
+					long index = position;
+					for (int i = 0; i < offsets.length; i++) {
+						out.writeLong(offsets[i]);
+						out.writeInt(lengths[i]);
+					}
+					out.writeLong(index);
+					out.writeInt(END_MAGIC);
+				} finally {
+					out.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * reads an iteration file from a stream a tile at a time, in the order
+	 * they were written, without needing the index
+	 */
+	public static final class StreamReader implements Closeable {
+		private final DataInputStream in;
+		private final Header header;
+		private int read;
+
+		public StreamReader(InputStream in) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+			header = Header.read(this.in);
+		}
+
+		public Header getHeader() {
+			return header;
+		}
+
+		/**
+		 * @return the next tile, or null when all have been read
+		 */
+		public Tile next() throws IOException {
+			if (read == header.getTilesAcross() * header.getTilesDown()) return null;
+			int column = in.readInt(), row = in.readInt();
+			byte filter = in.readByte();
+			int encodedLength = in.readInt(), deflatedLength = in.readInt();
+			if (column < 0 || column >= header.getTilesAcross() || row < 0
+					|| row >= header.getTilesDown() || encodedLength < 0 || deflatedLength < 0
+				|| deflatedLength > maxDeflated(encodedLength))
+				throw new IOException("tile record is damaged");
+			byte[] deflated = new byte[deflatedLength];
+			in.readFully(deflated);
+			read++;
+			int width = header.tileWidth(column), height = header.tileHeight(row);
+			return new Tile(column * header.getTileSize(), row * header.getTileSize(), width,
+					height, decode(filter, deflated, encodedLength, width, height));
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * reads any tile of an iteration file through its index, or the whole
+	 * buffer decoding tiles on all cores
+	 */
+	public static final class Reader implements Closeable {
+		private final RandomAccessFile file;
+		private final Header header;
+		/**
+		 * where each tile's record starts by the index, where the next record
+		 * or the index starts after it, and its deflated length
+		 */
+		private final long[] offsets, ends;
+		private final int[] lengths;
+
+		public Reader(File file) throws IOException {
+			this.file = new RandomAccessFile(file, "r");
+			try {
+				header = Header.read(new DataInputStream(new BufferedInputStream(
+						new RandomAccessInputStream(this.file, 0), 1 << 12)));
+				int tiles = header.getTilesAcross() * header.getTilesDown();
+				long length = this.file.length();
+				if (length < TRAILER) throw new EOFException("file is cut short");
+				this.file.seek(length - TRAILER);
+				long index = this.file.readLong();
+				if (this.file.readInt() != END_MAGIC || (long) tiles * INDEX_ENTRY > Integer.MAX_VALUE
+						|| index + (long) tiles * INDEX_ENTRY != length - TRAILER)
+					throw new IOException("index is missing or damaged");
+				byte[] entries = new byte[tiles * INDEX_ENTRY];
+				this.file.seek(index);
+				this.file.readFully(entries);
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(entries));
+				offsets = new long[tiles];
+				lengths = new int[tiles];
+				for (int i = 0; i < tiles; i++) {
+					offsets[i] = in.readLong();
+					lengths[i] = in.readInt();
+					if (offsets[i] < 0 || lengths[i] < 0
+							|| offsets[i] + RECORD + lengths[i] > index)
+						throw new IOException("index is damaged");
+				}
+				long[] sorted = offsets.clone();
+				Arrays.sort(sorted);
+				ends = new long[tiles];
+				for (int i = 0; i < tiles; i++) {
+					int next = Arrays.binarySearch(sorted, offsets[i]) + 1;
+					while (next < tiles && sorted[next] == offsets[i]) next++;
+					ends[i] = next < tiles ? sorted[next] : index;
+				}
+			} catch (IOException e) {
+				this.file.close();
+				throw e;
+			}
+		}
+
+		public Header getHeader() {
+			return header;
+		}
+
+		/**
+		 * @return the tile at a column and row of the grid of tiles
+		 */
+		public Tile readTile(int column, int row) throws IOException {
+			if (column < 0 || column >= header.getTilesAcross() || row < 0
+					|| row >= header.getTilesDown())
+				throw new IndexOutOfBoundsException("no tile " + column + ", " + row);
+			int tile = row * header.getTilesAcross() + column;
+			byte filter;
+			int encodedLength;
+			byte[] deflated;
+			synchronized (file) {
+				file.seek(offsets[tile]);
+				if (file.readInt() != column || file.readInt() != row)
+					throw new IOException("index does not match the tiles");
+				filter = file.readByte();
+				encodedLength = file.readInt();
+				int deflatedLength = file.readInt();
+				if (deflatedLength != lengths[tile])
+					throw new IOException("index does not match the tiles");
+				if (encodedLength < 0 || deflatedLength > maxDeflated(encodedLength)
+						|| offsets[tile] + RECORD + deflatedLength > ends[tile])
+					throw new IOException("tile record is damaged");
+				deflated = new byte[deflatedLength];
+				file.readFully(deflated);
+			}
+			int width = header.tileWidth(column), height = header.tileHeight(row);
+			return new Tile(column * header.getTileSize(), row * header.getTileSize(), width,
+					height, decode(filter, deflated, encodedLength, width, height));
+		}
+
+		/**
+		 * @return the whole buffer, row by row, decoded on the common
+		 * fork-join pool
+		 */
+		public int[] readAll() throws IOException {
+			final int[] orders = new int[header.getWidth() * header.getHeight()];
+			CompletableFuture<?>[] tiles = new CompletableFuture<?>[offsets.length];
+			for (int i = 0; i < offsets.length; i++) {
+				final int column = i % header.getTilesAcross(), row = i / header.getTilesAcross();
+				tiles[i] = CompletableFuture.runAsync(() -> {
+					try {
+						Tile tile = readTile(column, row);
+						for (int y = 0; y < tile.getHeight(); y++) {
+							System.arraycopy(tile.getOrders(), y * tile.getWidth(), orders,
+									(tile.getY() + y) * header.getWidth() + tile.getX(),
+									tile.getWidth());
+						}
+					} catch (IOException e) {
+						throw new CompletionException(e);
+					}
+				}, ForkJoinPool.commonPool());
+			}
+			try {
+				CompletableFuture.allOf(tiles).join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+				throw e;
+			}
+			return orders;
+		}
+
+		@Override
+		public void close() throws IOException {
+			file.close();
+		}
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * a stream over a RandomAccessFile from an offset, to read the header
+	 * through a DataInputStream
+	 */
+	private static final class RandomAccessInputStream extends InputStream {
+		private final RandomAccessFile file;
+		private long position;
+
+		RandomAccessInputStream(RandomAccessFile file, long position) {
+			this.file = file;
+			this.position = position;
+		}
+
+		@Override
+		public int read() throws IOException {
+			file.seek(position);
+			int b = file.read();
+			if (b >= 0) position++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			file.seek(position);
+			int n = file.read(b, off, len);
+			if (n > 0) position += n;
+			return n;
+		}
+	}
+
+	/**
+	 * write some views and report how small they are, how long encoding and
+	 * decoding took, and that they read back unchanged
+	 * @param args optionally a file to leave the last view in
+	 */
+	public static void main(String[] args) throws IOException {
+		double[][] views = { // center real, center imaginary, zoom
+				{ -0.8d, 0.08d, 250d },
+				{ -0.745d, 0.11d, 4000d },
+				{ -0.7436d, 0.1319d, 200000d } };
+		File file = args.length > 0 ? new File(args[0]) : File.createTempFile("view", "." + EXTENSION);
+		for (int pass = 0; pass < 2; pass++) { // the first pass warms up the JIT
+			for (int v = 0; v < views.length; v++) {
+				double zoom = views[v][2];
+				int xOffset = ComplexSet.xOffsetFor(views[v][0], ComplexSet.COLS / 2d, zoom);
+				int yOffset = ComplexSet.yOffsetFor(views[v][1], ComplexSet.ROWS / 2d, zoom);
+				ComplexSet set = new ComplexSet(zoom, 0d, xOffset, yOffset);
+				long t0 = System.nanoTime();
+				write(set, file);
+				long t1 = System.nanoTime();
+				int[] orders;
+				Reader reader = new Reader(file);
+				try {
+					orders = reader.readAll();
+				} finally {
+					reader.close();
+				}
+				long t2 = System.nanoTime();
+				if (pass == 1) {
+					System.out.printf("%s: %d bytes, %.1f times smaller than 4 bytes a pixel; "
+							+ "encoded in %.1f ms, decoded in %.1f ms; %s%n",
+							new Header(set, DEFAULT_TILE_SIZE), file.length(),
+							4d * orders.length / file.length(), (t1 - t0) / 1e6, (t2 - t1) / 1e6,
+							Arrays.equals(orders, set.getOrders()) ? "read back unchanged"
+									: "READ BACK DIFFERENT");
+				}
+			}
+		}
+		if (args.length == 0) file.delete();
+	}
+}
@@ -0,0 +1,132 @@
+package mandelbrot;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JPanel;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * A JPanel that shows the Julia set of the complex value under the mouse.
+ * Every mouse move asks for a new preview; it is first rendered at a quarter
+ * of the resolution, which is fast enough to keep up with the mouse, and
+ * then at full resolution once the mouse has rested.
+ *
+ * <p>
+ * Rendering happens on its own thread, separate from the main image, and
+ * only the newest position is ever rendered: positions that arrive while a
+ * preview is being rendered replace one another, and a render in progress
+ * gives up as soon as a newer position is waiting.
+ */
+@SuppressWarnings("serial")
+public class JuliaPreview extends JPanel {
+	/**
+	 * the preview is this many pixels on a side
+	 */
+	public static final int SIZE = 200;
+	/**
+	 * the coarse pass computes one pixel in each COARSE_STEP x COARSE_STEP
+	 * block
+	 */
+	private static final int COARSE_STEP = 4;
+	/**
+	 * the mouse has rested when it has not moved for this long
+	 */
+	private static final long REST_MILLIS = 120;
+	/**
+	 * the preview spans this far from 0 along both axes
+	 */
+	private static final double EXTENT = 1.6d;
+	/**
+	 * renders previews one position at a time
+	 */
+	private CoalescingExecutor worker;
+	/**
+	 * the formula the preview is rendered with, and the last point shown
+	 */
+	private volatile Formula formula = Formula.MANDELBROT;
+	private double lastReal, lastImaginary;
+	/**
+	 * the newest finished preview
+	 */
+	private volatile BufferedImage image;
+
+	public JuliaPreview() {
+		super();
+		setBounds(ComplexSet.COLS + 2 * ComplexImage.HORIZ_OFFSET,
+				ComplexImage.VERT_OFFSET, SIZE, SIZE); // positions and sizes this control
+
+		worker = new CoalescingExecutor("julia", Thread.NORM_PRIORITY);
+	}
+
+	/**
+	 * @see javax.swing.JComponent#getPreferredSize()
+	 */
+	public Dimension getPreferredSize() {
+		return new Dimension(SIZE, SIZE);
+	}
+
+	/**
+	 * show the Julia set of a new point
+	 * @param cReal the real part of c
+	 * @param cImaginary the imaginary part of c
+	 */
+	public void setPoint(final double cReal, final double cImaginary) {
+		lastReal = cReal;
+		lastImaginary = cImaginary;
+		worker.submit(new Runnable() {
+			@Override
+			public void run() {
+				if (!render(cReal, cImaginary, COARSE_STEP)) return;
+				if (worker.awaitSuperseded(REST_MILLIS)) return;
+				render(cReal, cImaginary, 1);
+			}
+		});
+	}
+
+	/**
+	 * show the last point again with a different formula
+	 * @param newFormula the formula to use from now on
+	 */
+	public void setFormula(Formula newFormula) {
+		formula = newFormula;
+		setPoint(lastReal, lastImaginary);
+	}
+
+	/**
+	 * runs on the worker: render the Julia set of c and put it on screen
+	 * @param step how many pixels of the preview each computed pixel covers
+	 * @return false if a newer point arrived and the render was abandoned
+	 */
+	private boolean render(double cReal, double cImaginary, int step) {
+		Formula f = formula;
+		int size = SIZE / step;
+		int[] rgb = new int[size * size];
+		double pixel = 2 * EXTENT / size;
+		for (int y = 0; y < size; y++) {
+			if (worker.isSuperseded()) return false;
+			f.fillJuliaRow(rgb, y * size, size, -EXTENT + 0.5d * pixel, pixel,
+					EXTENT - (y + 0.5d) * pixel, cReal, cImaginary);
+			for (int i = y * size; i < (y + 1) * size; i++) rgb[i] = ComplexValue.colorOf(rgb[i]);
+		}
+		BufferedImage rendered = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		rendered.setRGB(0, 0, size, size, rgb, 0, size);
+		image = rendered;
+		repaint();
+		return true;
+	}
+
+	/**
+	 * display the newest preview, scaled up if it is a coarse one
+	 * @see javax.swing.JComponent#paint(java.awt.Graphics)
+	 */
+	@Override
+	public void paint(Graphics g) {
+		super.paint(g);
+		BufferedImage shown = image;
+		if (shown != null) g.drawImage(shown, 0, 0, SIZE, SIZE, null);
+	}
+}
@@ -6,8 +6,8 @@ import java.awt.event.ActionListener;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.swing.JButton;
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 
 /**
  * @author John Bannister <john_bannister@my.uri.edu>
@@ -36,14 +36,23 @@ import javax.swing.JFrame;
  * <LI>exit (exit the program), and
  * <LI>zoom (zoom into the image).
  * </OL>
+ * A list beside them chooses the formula: the Mandelbrot set itself, or the
+ * Multibrot, Burning Ship or Tricorn sets.
  * 
  * <p>
  * The text control displays the location of the mouse pointer with respect to
- * the 600 x 600 pixel grid.
+ * the 600 x 600 pixel grid, and a smaller view beside the bitmap shows the
+ * Julia set of the complex number under the mouse pointer. Below it a strip
+ * of thumbnails shows the views in the history; clicking one goes back to it.
+ * Under the strip a list sets a frame budget: views that would take longer
+ * to render are first shown coarsely within it, then in full.
  * 
  * <p>
  * The center of the portion of the plane that is in view is changed by clicking
- * with the mouse at a new center, at which point a new image is drawn.
+ * with the mouse at a new center, at which point a new image is drawn. The
+ * view can also be dragged to pan it and zoomed with the mouse wheel, and a
+ * rectangle dragged out with the right button or with Shift held is zoomed
+ * into directly.
  */
 @SuppressWarnings("serial")
 public class Main extends JFrame implements ActionListener {
@@ -59,6 +68,18 @@ public class Main extends JFrame implements ActionListener {
 	 * a JPanel in charge of displaying the image
 	 */
 	private ComplexImage theComplexImage;
+	/**
+	 * a JPanel showing the Julia set of the point under the mouse
+	 */
+	private JuliaPreview theJulia;
+	/**
+	 * a JPanel of thumbnails of the history
+	 */
+	private HistoryStrip theHistory;
+	/**
+	 * a JPanel to choose the frame budget
+	 */
+	private BudgetPanel theBudget;
 
 	/**
 	 * Initializes private member variables. Sets up window, buttons and text
@@ -68,7 +89,7 @@ public class Main extends JFrame implements ActionListener {
 		super("Mandelbrot Set Fractal Image Viewer");
 		
 		setLayout(null);
-		setSize(new Dimension(610, 725));
+		setSize(new Dimension(820, 725));
 		setLocationRelativeTo(null);
 		
 		theText = new PositionText();
@@ -77,6 +98,15 @@ public class Main extends JFrame implements ActionListener {
 		theButtons = new ButtonPanel(this);
 		add(theButtons);
         
+		theJulia = new JuliaPreview();
+		add(theJulia);
+
+		theHistory = new HistoryStrip(this);
+		add(theHistory);
+
+		theBudget = new BudgetPanel(this);
+		add(theBudget);
+
 		theComplexImage = new ComplexImage(this);
 		addMouseMotionListener(theComplexImage);
 		add(theComplexImage);
@@ -90,7 +120,19 @@ public class Main extends JFrame implements ActionListener {
 	 * @param args Command line arguments not supported.
 	 */
 	public static void main(String[] args) {
-		new Main().setVisible(true);
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				new Main().setVisible(true);
+			}
+		});
+	}
+
+	/**
+	 * @return how long since this class was loaded, i.e. since startup
+	 */
+	public static long millisSinceStart() {
+		return (System.nanoTime() - STARTED) / 1000000;
 	}
 
 	/**
@@ -101,7 +143,7 @@ public class Main extends JFrame implements ActionListener {
 	 */
 	@Override
 	public void actionPerformed(ActionEvent e) {
-		String actionString = ((JButton) e.getSource()).getActionCommand();
+		String actionString = e.getActionCommand();
 
 		if (actionString == "exit")
 			exit();
@@ -113,6 +155,65 @@ public class Main extends JFrame implements ActionListener {
 			previous();
 		else if (actionString == "zoom")
 			zoom();
+		else if (actionString == "formula")
+			changeFormula();
+		else if (actionString == "budget")
+			changeBudget();
+	}
+
+	/**
+	 * render from now on within the budget chosen in theBudget
+	 */
+	private void changeBudget() {
+		Main.log("Frame budget chosen");
+
+		theComplexImage.setFrameBudget(theBudget.getBudgetMillis());
+	}
+
+	/**
+	 * render the view again with the formula chosen in theButtons
+	 */
+	private void changeFormula() {
+		Main.log("Formula chosen");
+
+		Formula f = theButtons.getFormula();
+		theJulia.setFormula(f);
+		theComplexImage.setFormula(f);
+	}
+
+	/**
+	 * the image has gone back to a view made with another formula
+	 * @param f the formula of the view now shown
+	 */
+	public void formulaChanged(Formula f) {
+		theButtons.showFormula(f);
+	}
+
+	/**
+	 * a new view has been rendered: show in theBudget how the render went
+	 * @param stats the render's statistics, or null if it was not rendered
+	 * here
+	 */
+	public void renderFinished(TileScheduler.RenderStats stats) {
+		theBudget.showRenderStats(stats);
+	}
+
+	/**
+	 * the history has changed: show it in theHistory
+	 * @param history the history, most recent first
+	 */
+	public void historyChanged(HistoryStack history) {
+		theHistory.setHistory(history);
+	}
+
+	/**
+	 * a thumbnail was clicked: go back to its view
+	 * @param set the set the thumbnail was made from
+	 */
+	public void showHistory(ComplexSet set) {
+		Main.log("History thumbnail clicked");
+
+		theComplexImage.showHistory(set);
 	}
 
 	/**
@@ -163,9 +264,20 @@ public class Main extends JFrame implements ActionListener {
 	 * update the text label to show the position of the mouse
 	 * @param x the position of the mouse on the real line
 	 * @param y the position of the mouse on the complex line
+	 * @param order the order of the number under the mouse, or -1 if it is
+	 * not known
+	 */
+	public void updatePosition(double x, double y, int order) {
+		theText.setText(x, y, order);
+	}
+
+	/**
+	 * show the Julia set of the point under the mouse
+	 * @param real the real part of the point
+	 * @param imaginary the imaginary part of the point
 	 */
-	public void updatePosition(double x, double y) {
-		theText.setText(x, y);
+	public void updateJulia(double real, double imaginary) {
+		theJulia.setPoint(real, imaginary);
 	}
 	
 	/**
@@ -181,6 +293,20 @@ public class Main extends JFrame implements ActionListener {
 			logger.log(Level.INFO, mesg);
 		}
 	}
+
+	/**
+	 * a logger for measurements worth collecting without the rest of the
+	 * debugging output above. It logs only if the system property of its
+	 * name is true, e.g. java -Dmandelbrot.stats=true mandelbrot.Main
+	 * @param name the name of the logger and of the property that turns it on
+	 */
+	static Logger measurements(String name) {
+		Logger measurements = Logger.getLogger(name);
+		if (!Boolean.getBoolean(name)) measurements.setLevel(Level.OFF);
+		return measurements;
+	}
+
+	private final static long STARTED = System.nanoTime();
 	private final static Logger logger = Logger.getLogger(Main.class.getName());
 	private final static boolean LOGGING = false;
 	
@@ -2,6 +2,7 @@ package mandelbrot;
 
 import java.awt.Font;
 import java.text.DecimalFormat;
+import java.text.FieldPosition;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -9,11 +10,22 @@ import javax.swing.JPanel;
 /**
  * @author John Bannister <john_bannister@my.uri.edu>
  * Displays a text label with the coordinates of the mouse with respect to the
- * displayed portion of the complex plane
+ * displayed portion of the complex plane, and the order of the number there
+ * <p>
+ * Only called on the event dispatch thread, so the formats and the buffer
+ * the text is built in are made once and reused for every mouse move.
  */
 @SuppressWarnings("serial")
 public class PositionText extends JPanel {
 	private JLabel theLabel;
+	/**
+	 * truncate received numbers and display them as strings
+	 */
+	private final DecimalFormat realFormat = new DecimalFormat("0.000E000");
+	private final DecimalFormat imgFormat = new DecimalFormat(" + 0.000E000; - 0.000E000");
+	private final StringBuffer text = new StringBuffer();
+	private final FieldPosition ignored = new FieldPosition(0);
+
 	public PositionText() {
 		super();
 		setBounds(100, 650, 400, 50); // positions and sizes this control
@@ -30,13 +42,22 @@ public class PositionText extends JPanel {
 	 * @param i the imaginary part of the number
 	 */
 	public void setText(double r, double i) {
-		// truncate received numbers and ...
-		DecimalFormat realFormat = new DecimalFormat("0.000E000");
-		DecimalFormat imgFormat = new DecimalFormat(" + 0.000E000; - 0.000E000");
-		// ... display as strings
-		String real = realFormat.format(r);
-		String img = imgFormat.format(i);
-		theLabel.setText(real + img);
+		setText(r, i, -1);
+	}
+
+	/**
+	 * @param r the real part of the number
+	 * @param i the imaginary part of the number
+	 * @param order the order of the number, or -1 if it is not known
+	 */
+	public void setText(double r, double i, int order) {
+		text.setLength(0);
+		realFormat.format(r, text, ignored);
+		imgFormat.format(i, text, ignored);
+		text.append('i');
+		if (order == ComplexValue.MAX_ITERATIONS) text.append("  in set");
+		else if (order >= 0) text.append("  n=").append(order);
+		theLabel.setText(text.toString());
 	}
 	
 }
@@ -0,0 +1,152 @@
+package mandelbrot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * The pool of threads shared by foreground renders and background work such
+ * as history thumbnails. Waiting foreground tasks always run before waiting
+ * background ones. A background task is given as a series of short steps,
+ * and while a foreground render is under way it is set aside between steps
+ * and its thread handed to the render; it carries on from the next step
+ * once no foreground render is left.
+ */
+final class PriorityScheduler {
+	/**
+	 * a series of short pieces of background work
+	 */
+	interface Steps {
+		/**
+		 * do the next piece of work
+		 * @return true if there is more to do
+		 */
+		boolean step();
+	}
+
+	private static final int FOREGROUND = 0, BACKGROUND = 1;
+	/**
+	 * the scheduler everything shares; made on first use
+	 */
+	private static PriorityScheduler shared;
+
+	private final ThreadPoolExecutor pool;
+	private final AtomicLong sequence = new AtomicLong();
+	/**
+	 * foreground renders under way, and the background jobs set aside
+	 * until there are none; both guarded by this
+	 */
+	private int foreground;
+	private final List<Job> deferred = new ArrayList<Job>();
+
+	/**
+	 * @param threads how many threads in the pool
+	 */
+	PriorityScheduler(int threads) {
+		pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new PriorityBlockingQueue<Runnable>(), new DaemonThreadFactory("render"));
+	}
+
+	/**
+	 * @return the scheduler shared by the whole program, with a thread for
+	 * every core but the one the foreground render's caller runs on
+	 */
+	static synchronized PriorityScheduler shared() {
+		if (shared == null)
+			shared = new PriorityScheduler(
+					Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+		return shared;
+	}
+
+	/**
+	 * a foreground render is starting; background work gives up its threads
+	 * at its next step until endForeground()
+	 */
+	synchronized void beginForeground() {
+		foreground++;
+	}
+
+	/**
+	 * a foreground render has finished; when none is left the background
+	 * work set aside carries on
+	 */
+	synchronized void endForeground() {
+		if (--foreground > 0) return;
+		for (Job job : deferred) pool.execute(job);
+		deferred.clear();
+	}
+
+	/**
+	 * run part of a foreground render, ahead of any waiting background work
+	 */
+	void execute(Runnable task) {
+		pool.execute(new Job(FOREGROUND, task, null));
+	}
+
+	/**
+	 * run background work a step at a time, when no foreground render
+	 * needs the threads
+	 */
+	void submitBackground(Steps steps) {
+		pool.execute(new Job(BACKGROUND, null, steps));
+	}
+
+	/**
+	 * @return true if the background job should give up its thread
+	 */
+	private synchronized boolean deferIfForeground(Job job) {
+		if (foreground == 0) return false;
+		deferred.add(job);
+		return true;
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * a task in the pool's queue: lower priorities first, then first come
+	 * first served
+	 */
+	private final class Job implements Runnable, Comparable<Job> {
+		private final int priority;
+		private final long order = sequence.getAndIncrement();
+		private final Runnable task;
+		private final Steps steps;
+
+		Job(int priority, Runnable task, Steps steps) {
+			this.priority = priority;
+			this.task = task;
+			this.steps = steps;
+		}
+
+		@Override
+		public void run() {
+			if (task != null) {
+				task.run();
+				return;
+			}
+			Thread thread = Thread.currentThread();
+			int oldPriority = thread.getPriority();
+			thread.setPriority(Thread.MIN_PRIORITY);
+			try {
+				while (!deferIfForeground(this)) {
+					if (!steps.step()) return;
+				}
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			} finally {
+				thread.setPriority(oldPriority);
+			}
+		}
+
+		@Override
+		public int compareTo(Job other) {
+			if (priority != other.priority) return Integer.compare(priority, other.priority);
+			return Long.compare(order, other.order);
+		}
+	}
+}
@@ -0,0 +1,280 @@
+package mandelbrot;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * Keeps each navigation within a frame budget, a target time from asking
+ * for a view to seeing it. Before a view is rendered its cost is predicted
+ * from a grid of sample points: the previous frame's order at a point if it
+ * covered it, otherwise the order computed there. With the measured rate of
+ * recent renders this gives the time a render would take. If the full
+ * render fits the budget it is all that is done; if not, a quick frame is
+ * rendered first, sampling one pixel in each step x step block and maybe
+ * giving up on pixels after fewer iterations. The finest step that fits
+ * with all the iterations is used, down to MAX_FULL_ITERATION_STEP; then
+ * the most iterations that fit at that step; then the finest step that fits
+ * with the fewest. The full render follows and replaces it.
+ *
+ * <p>
+ * The rates, in nanoseconds per iteration, are kept separately for quick
+ * frames, which run on one thread, and full renders, which run on all
+ * cores, as exponentially weighted moving averages of what each render
+ * measured. So is the time a quick frame takes to appear beyond planning
+ * and rendering it. Every decision and measurement is logged to the
+ * mandelbrot.quality logger, with -Dmandelbrot.quality=true, so the
+ * constants can be tuned.
+ */
+final class QualityController {
+	private static final Logger DECISIONS = Main.measurements("mandelbrot.quality");
+	/**
+	 * the steps a quick frame may sample at, finest first; each divides
+	 * COLS and ROWS
+	 */
+	private static final int[] STEPS = { 2, 3, 4, 5, 6, 8, 10, 12, 15, 20 };
+	/**
+	 * quick frames get no coarser than this step before their iterations
+	 * are cut; only if the fewest iterations do not fit at it do they get
+	 * coarser still
+	 */
+	private static final int MAX_FULL_ITERATION_STEP = 4;
+	/**
+	 * the iteration limits a quick frame may use, most first
+	 */
+	private static final int[] LIMITS = { ComplexValue.MAX_ITERATIONS, 150, 100, 64, 32 };
+	/**
+	 * cost is predicted from PROBE x PROBE sample points
+	 */
+	private static final int PROBE = 24;
+	/**
+	 * the weight of the newest measurement in the moving averages
+	 */
+	private static final double ALPHA = 0.3d;
+	/**
+	 * the rates assumed until renders have been measured
+	 */
+	private static final double INITIAL_QUICK_NANOS = 8d, INITIAL_FULL_NANOS = 8d;
+
+	/**
+	 * the budget, or 0 for none
+	 */
+	private long budgetNanos;
+	/**
+	 * nanoseconds per iteration of quick frames and of full renders; an
+	 * iteration here counts one for each pixel besides its order, for the
+	 * work done per pixel whatever its order
+	 */
+	private double quickNanos = INITIAL_QUICK_NANOS, fullNanos = INITIAL_FULL_NANOS;
+	/**
+	 * the time a quick frame takes to appear beyond planning and rendering
+	 * it: waiting for the event dispatch thread, and painting
+	 */
+	private double overheadNanos;
+
+	/**
+	 * a controller with no budget until one is set
+	 */
+	QualityController() {}
+
+	/**
+	 * @param budgetMillis the time each navigation should take, or 0 to
+	 * always render in full at once; renders are measured either way
+	 */
+	synchronized void setBudgetMillis(int budgetMillis) {
+		budgetNanos = budgetMillis * 1000000L;
+		DECISIONS.info("budget set to " + budgetMillis + " ms");
+	}
+
+	/**
+	 * @return the budget in milliseconds, or 0 for none
+	 */
+	synchronized int getBudgetMillis() {
+		return (int) (budgetNanos / 1000000L);
+	}
+
+	/**
+	 * decide how to render a view. What is left of the budget once the view
+	 * has waited for the worker and been probed is shared between the
+	 * quick frame and the overhead of showing it.
+	 * @param previous the frame shown before, or null
+	 * @param asked when the view was asked for
+	 * @return the quick frame to render first, or null if the full render
+	 * fits the budget or there is no budget
+	 */
+	synchronized Plan plan(ComplexSet previous, double zoom, int xOffset, int yOffset,
+			Formula formula, long asked) {
+		if (budgetNanos == 0) return null;
+		long start = System.nanoTime();
+		int[] probes = probe(previous, zoom, xOffset, yOffset, formula);
+		long planned = System.nanoTime();
+		long probeNanos = planned - start;
+		double pixels = (double) ComplexSet.COLS * ComplexSet.ROWS;
+		long budget = budgetNanos - (planned - asked) - (long) overheadNanos;
+
+		double full = pixels * iterationsPerPixel(probes, ComplexValue.MAX_ITERATIONS) * fullNanos;
+		if (full <= budget) {
+			if (DECISIONS.isLoggable(Level.INFO))
+				DECISIONS.info(String.format("full render predicted %.1f ms of %d ms budget"
+						+ " (planned %.1f ms after asking, probed in %.1f ms, %.1f ns/iteration)",
+						full / 1e6, getBudgetMillis(), (planned - asked) / 1e6, probeNanos / 1e6,
+						fullNanos));
+			return null;
+		}
+
+		Plan plan = null;
+		for (int s = 0; plan == null && STEPS[s] <= MAX_FULL_ITERATION_STEP; s++)
+			plan = fit(probes, pixels, STEPS[s], 0, budget);
+		for (int i = 1; plan == null && i < LIMITS.length; i++)
+			plan = fit(probes, pixels, MAX_FULL_ITERATION_STEP, i, budget);
+		for (int s = 0; plan == null && s < STEPS.length; s++) {
+			if (STEPS[s] > MAX_FULL_ITERATION_STEP)
+				plan = fit(probes, pixels, STEPS[s], LIMITS.length - 1, budget);
+		}
+		if (plan == null) { // nothing fits: the cheapest there is
+			int step = STEPS[STEPS.length - 1], limit = LIMITS[LIMITS.length - 1];
+			plan = new Plan(step, limit, cost(probes, pixels, step, limit));
+		}
+		plan.planned = planned;
+		if (DECISIONS.isLoggable(Level.INFO))
+			DECISIONS.info(String.format("full render predicted %.1f ms of %d ms budget;"
+					+ " quick frame at step %d, %d iterations, predicted %.1f ms"
+					+ " (planned %.1f ms after asking, probed in %.1f ms, overhead %.1f ms,"
+					+ " %.1f ns/iteration quick, %.1f full)",
+					full / 1e6, getBudgetMillis(), plan.step, plan.maxIterations,
+					plan.predictedNanos / 1e6, (planned - asked) / 1e6, probeNanos / 1e6,
+					overheadNanos / 1e6, quickNanos, fullNanos));
+		return plan;
+	}
+
+	/**
+	 * @return a plan at this step and the limit at index i of LIMITS if it
+	 * is predicted to fit the budget, else null
+	 */
+	private Plan fit(int[] probes, double pixels, int step, int i, long budget) {
+		double cost = cost(probes, pixels, step, LIMITS[i]);
+		return cost <= budget ? new Plan(step, LIMITS[i], cost) : null;
+	}
+
+	private double cost(int[] probes, double pixels, int step, int limit) {
+		return pixels / (step * step) * iterationsPerPixel(probes, limit) * quickNanos;
+	}
+
+	/**
+	 * @return the mean iterations a pixel will cost, by the probes, when
+	 * giving up after limit
+	 */
+	private static double iterationsPerPixel(int[] probes, int limit) {
+		long sum = 0;
+		for (int order : probes) sum += Math.min(order, limit) + 1;
+		return (double) sum / probes.length;
+	}
+
+	/**
+	 * @return the orders at a grid of points over the view, read from the
+	 * previous frame where it covered them
+	 */
+	private static int[] probe(ComplexSet previous, double zoom, int xOffset, int yOffset,
+			Formula formula) {
+		int[] probes = new int[PROBE * PROBE];
+		boolean usePrevious = previous != null && previous.getFormula().equals(formula);
+		for (int py = 0; py < PROBE; py++) {
+			double imaginary = ComplexSet.imaginaryAt((py + 0.5d) * ComplexSet.ROWS / PROBE,
+					zoom, yOffset);
+			for (int px = 0; px < PROBE; px++) {
+				double real = ComplexSet.realAt((px + 0.5d) * ComplexSet.COLS / PROBE, zoom,
+						xOffset);
+				int order = -1;
+				if (usePrevious) {
+					int x = (int) Math.round(ComplexSet.columnOf(real, previous.getZoom(),
+							previous.getxOffset()));
+					int y = (int) Math.round(ComplexSet.rowOf(imaginary, previous.getZoom(),
+							previous.getyOffset()));
+					if (x >= 0 && x < ComplexSet.COLS && y >= 0 && y < ComplexSet.ROWS)
+						order = previous.getOrder(x, y);
+				}
+				probes[py * PROBE + px] = order >= 0 ? order : formula.computeOrder(real, imaginary);
+			}
+		}
+		return probes;
+	}
+
+	/**
+	 * a quick frame has been rendered: fold its rate into the average
+	 * @param iterations the iterations it made, one more for each pixel
+	 */
+	synchronized void quickRendered(Plan plan, long iterations, long nanos) {
+		if (iterations == 0) return;
+		plan.renderNanos = nanos;
+		quickNanos += ALPHA * ((double) nanos / iterations - quickNanos);
+		if (DECISIONS.isLoggable(Level.INFO))
+			DECISIONS.info(String.format("quick frame at step %d took %.1f ms, predicted %.1f ms;"
+					+ " now %.1f ns/iteration", plan.step, nanos / 1e6, plan.predictedNanos / 1e6,
+					quickNanos));
+	}
+
+	/**
+	 * a quick frame is on screen: fold the time it took beyond planning and
+	 * rendering into the average overhead. The time before planning ended
+	 * is not part of it: plan() takes that from the budget as it goes.
+	 * @param asked when the view was asked for
+	 */
+	synchronized void quickShown(Plan plan, long asked) {
+		long shown = System.nanoTime();
+		overheadNanos += ALPHA * (Math.max(0L, shown - plan.planned - plan.renderNanos)
+				- overheadNanos);
+		if (DECISIONS.isLoggable(Level.INFO))
+			DECISIONS.info(String.format("quick frame shown %.1f ms after the view was asked"
+					+ " for, budget %d ms; now %.1f ms overhead", (shown - asked) / 1e6,
+					getBudgetMillis(), overheadNanos / 1e6));
+	}
+
+	/**
+	 * a full render has finished: fold its rate into the average
+	 */
+	synchronized void fullRendered(ComplexSet set, long nanos) {
+		long iterations = 0;
+		for (int order : set.getOrders()) iterations += order + 1;
+		fullNanos += ALPHA * ((double) nanos / iterations - fullNanos);
+		if (DECISIONS.isLoggable(Level.INFO))
+			DECISIONS.info(String.format("full render took %.1f ms; now %.1f ns/iteration",
+					nanos / 1e6, fullNanos));
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * how to render a quick frame, and what it is predicted to cost
+	 */
+	static final class Plan {
+		private final int step, maxIterations;
+		private final double predictedNanos;
+		/**
+		 * when planning finished, and how long the quick frame took to
+		 * render once it has
+		 */
+		private long planned, renderNanos;
+
+		Plan(int step, int maxIterations, double predictedNanos) {
+			this.step = step;
+			this.maxIterations = maxIterations;
+			this.predictedNanos = predictedNanos;
+		}
+
+		/**
+		 * @return the quick frame samples one pixel in each step x step block
+		 */
+		int getStep() {
+			return step;
+		}
+
+		/**
+		 * @return the quick frame gives up on a pixel after this many
+		 * iterations
+		 */
+		int getMaxIterations() {
+			return maxIterations;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package mandelbrot;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * What to render and how: a Viewport, the Formula to render it with, the
+ * size of the square tiles the result is delivered in, how many tiles may
+ * be rendered at once, and whether the tiles hold orders or distances from
+ * the set. Immutable; the with methods return altered copies.
+ *
+ * <p>
+ * Part of the rendering library, which uses no AWT or Swing classes.
+ *
+ * @see Renderer
+ */
+public final class RenderRequest {
+	/**
+	 * tiles are this many pixels on a side unless asked otherwise
+	 */
+	public static final int DEFAULT_TILE_SIZE = 64;
+
+	private final Viewport viewport;
+	private final Formula formula;
+	private final int tileSize, parallelism;
+	private final boolean distances;
+
+	/**
+	 * a request for the Mandelbrot set in the given view, in tiles of the
+	 * default size, rendered on as many threads as there are cores
+	 * @param viewport the view to render
+	 */
+	public RenderRequest(Viewport viewport) {
+		this(viewport, Formula.MANDELBROT, DEFAULT_TILE_SIZE,
+				Runtime.getRuntime().availableProcessors(), false);
+	}
+
+	private RenderRequest(Viewport viewport, Formula formula, int tileSize,
+			int parallelism, boolean distances) {
+		if (viewport == null || formula == null) throw new NullPointerException();
+		if (tileSize <= 0) throw new IllegalArgumentException("tile size must be positive");
+		if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive");
+		if (distances && !formula.equals(Formula.MANDELBROT))
+			throw new IllegalArgumentException("only the Mandelbrot formula has distances: "
+					+ formula);
+		this.viewport = viewport;
+		this.formula = formula;
+		this.tileSize = tileSize;
+		this.parallelism = parallelism;
+		this.distances = distances;
+	}
+
+	/**
+	 * @return this request with another formula
+	 */
+	public RenderRequest withFormula(Formula newFormula) {
+		return new RenderRequest(viewport, newFormula, tileSize, parallelism, distances);
+	}
+
+	/**
+	 * @return this request with tiles of another size; tiles at the right
+	 * and bottom edges are cut to fit the view
+	 */
+	public RenderRequest withTileSize(int newTileSize) {
+		return new RenderRequest(viewport, formula, newTileSize, parallelism, distances);
+	}
+
+	/**
+	 * @return this request limited to rendering this many tiles at once
+	 */
+	public RenderRequest withParallelism(int newParallelism) {
+		return new RenderRequest(viewport, formula, tileSize, newParallelism, distances);
+	}
+
+	/**
+	 * @param newDistances true for tiles holding each pixel's distance from
+	 * the set, for shading the boundary with DistanceEstimator.shade(), in
+	 * place of its order; only the Mandelbrot formula has distances
+	 * @return this request with tiles of orders or of distances
+	 * @see DistanceEstimator
+	 */
+	public RenderRequest withDistances(boolean newDistances) {
+		return new RenderRequest(viewport, formula, tileSize, parallelism, newDistances);
+	}
+
+	/**
+	 * @return the view to render
+	 */
+	public Viewport getViewport() {
+		return viewport;
+	}
+
+	/**
+	 * @return the formula to render with
+	 */
+	public Formula getFormula() {
+		return formula;
+	}
+
+	/**
+	 * @return the width and height of a tile in pixels
+	 */
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * @return the most tiles rendered at once
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @return true if the tiles hold distances rather than orders
+	 */
+	public boolean wantsDistances() {
+		return distances;
+	}
+
+	/**
+	 * @return the number of tiles across the view
+	 */
+	public int getTilesAcross() {
+		return (viewport.getWidth() + tileSize - 1) / tileSize;
+	}
+
+	/**
+	 * @return the number of tiles down the view
+	 */
+	public int getTilesDown() {
+		return (viewport.getHeight() + tileSize - 1) / tileSize;
+	}
+}
@@ -0,0 +1,240 @@
+package mandelbrot;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * Renders fractals for programs other than this one's window. A
+ * RenderRequest is turned into a Flow.Publisher of Tiles; each Subscriber
+ * gets its own render, and receives each tile as soon as it is finished,
+ * before the rest of the frame is done. Tiles arrive in no fixed order.
+ *
+ * <p>
+ * Only as many tiles are rendered as the subscriber has asked for and not
+ * yet received, so a slow consumer holds back the render instead of piling
+ * up finished tiles. Cancelling the subscription stops the tiles being
+ * rendered within a row, and no more are started.
+ *
+ * <p>
+ * The rendering library is this class with Viewport, RenderRequest, Tile and
+ * Formula, and DistanceEstimator's estimate() and shade() for distances;
+ * none of them use AWT or Swing classes, nor log through Main.
+ */
+public final class Renderer {
+	/**
+	 * the executor of renderers made without one, started on first use
+	 */
+	private static ExecutorService sharedPool;
+
+	private final Executor executor;
+
+	/**
+	 * a renderer on a shared pool of daemon threads, one per core
+	 */
+	public Renderer() {
+		this(sharedPool());
+	}
+
+	/**
+	 * @param executor runs the rendering of tiles; each tile is one task
+	 */
+	public Renderer(Executor executor) {
+		if (executor == null) throw new NullPointerException();
+		this.executor = executor;
+	}
+
+	private static synchronized ExecutorService sharedPool() {
+		if (sharedPool == null) {
+			sharedPool = Executors.newFixedThreadPool(
+					Runtime.getRuntime().availableProcessors(),
+					new DaemonThreadFactory("renderer"));
+		}
+		return sharedPool;
+	}
+
+	/**
+	 * @param request what to render
+	 * @return a publisher that renders the request anew for each subscriber
+	 */
+	public Flow.Publisher<Tile> render(final RenderRequest request) {
+		if (request == null) throw new NullPointerException();
+		return new Flow.Publisher<Tile>() {
+			@Override
+			public void subscribe(Flow.Subscriber<? super Tile> subscriber) {
+				if (subscriber == null) throw new NullPointerException();
+				subscriber.onSubscribe(new TileSubscription(request, subscriber));
+			}
+		};
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 *
+	 * <p>
+	 * One subscriber's render. Tiles are started in rows from the top left
+	 * while there is demand for them, and queued as they finish. Whichever
+	 * thread finds tiles to deliver or start, a request() or a finished tile,
+	 * does so in drain(); work counts which threads are in or waiting for
+	 * drain(), and only the first in runs it, so the subscriber is never
+	 * called by two threads at once.
+	 */
+	private final class TileSubscription implements Flow.Subscription {
+		private final RenderRequest request;
+		private final Viewport viewport;
+		private final Flow.Subscriber<? super Tile> subscriber;
+		private final int tileCount;
+		/**
+		 * tiles asked for and not yet delivered
+		 */
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicInteger work = new AtomicInteger();
+		/**
+		 * tiles being rendered now
+		 */
+		private final AtomicInteger rendering = new AtomicInteger();
+		private final Queue<Tile> finished = new ConcurrentLinkedQueue<Tile>();
+		/**
+		 * the next tile to start, and how many have been delivered; only
+		 * touched in drain()
+		 */
+		private int nextTile, delivered;
+		private volatile boolean cancelled;
+		private volatile Throwable error;
+
+		TileSubscription(RenderRequest request, Flow.Subscriber<? super Tile> subscriber) {
+			this.request = request;
+			this.viewport = request.getViewport();
+			this.subscriber = subscriber;
+			tileCount = request.getTilesAcross() * request.getTilesDown();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				error = new IllegalArgumentException("request() must ask for at least one tile: " + n);
+			} else {
+				long current, next;
+				do {
+					current = requested.get();
+					next = current + n < 0 ? Long.MAX_VALUE : current + n;
+				} while (!requested.compareAndSet(current, next));
+			}
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * deliver finished tiles while there is demand, then start as many
+		 * tiles as demand and the request's parallelism allow
+		 */
+		private void drain() {
+			if (work.getAndIncrement() != 0) return;
+			int missed = 1;
+			do {
+				long wanted = requested.get();
+				long sent = 0;
+				while (sent < wanted && !cancelled) {
+					Tile tile = finished.poll();
+					if (tile == null) break;
+					subscriber.onNext(tile);
+					sent++;
+					delivered++;
+				}
+				if (sent > 0 && wanted != Long.MAX_VALUE) wanted = requested.addAndGet(-sent);
+				if (cancelled) {
+					finished.clear();
+					return;
+				}
+				if (error != null) {
+					cancelled = true;
+					finished.clear();
+					subscriber.onError(error);
+					return;
+				}
+				if (delivered == tileCount) {
+					cancelled = true;
+					subscriber.onComplete();
+					return;
+				}
+				while (nextTile < tileCount && rendering.get() < request.getParallelism()
+						&& rendering.get() + finished.size() < wanted && error == null) {
+					start(nextTile++);
+				}
+				if (error != null) continue; // report it on the next pass
+				missed = work.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		/**
+		 * render a tile on the executor, then drain() to deliver it
+		 * @param index the tile's place in rows from the top left
+		 */
+		private void start(final int index) {
+			rendering.incrementAndGet();
+			Runnable task = new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Tile tile = renderTile(index);
+						if (tile != null) finished.offer(tile);
+					} catch (RuntimeException e) {
+						error = e;
+					} finally {
+						rendering.decrementAndGet();
+						drain();
+					}
+				}
+			};
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				rendering.decrementAndGet();
+				error = e;
+			}
+		}
+
+		/**
+		 * @return the finished tile, or null if the subscription was
+		 * cancelled before it was done
+		 */
+		private Tile renderTile(int index) {
+			int size = request.getTileSize();
+			int x0 = index % request.getTilesAcross() * size;
+			int y0 = index / request.getTilesAcross() * size;
+			int width = Math.min(size, viewport.getWidth() - x0);
+			int height = Math.min(size, viewport.getHeight() - y0);
+			double real0 = viewport.realAt(x0);
+			double step = viewport.getPixelSize();
+			if (request.wantsDistances()) {
+				// the discs filled in cross rows, so the tile is done whole
+				if (cancelled) return null;
+				double[] distances = new double[width * height];
+				DistanceEstimator.estimate(distances, width, height, real0,
+						viewport.imaginaryAt(y0), step, -step);
+				return new Tile(x0, y0, width, height, null, distances);
+			}
+			int[] orders = new int[width * height];
+			Formula formula = request.getFormula();
+			for (int y = 0; y < height; y++) {
+				if (cancelled) return null;
+				formula.fillRow(orders, y * width, width, real0, step,
+						viewport.imaginaryAt(y0 + y));
+			}
+			return new Tile(x0, y0, width, height, orders);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package mandelbrot;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ * 
+ * <p>
+ * Renders the views the user is likely to ask for next while the current one
+ * is being looked at, so that asking for one of them completes at once.
+ * 
+ * <p>
+ * The work runs on a single low-priority thread. Anything not yet finished is
+ * cancelled as soon as a real request arrives, so speculation never runs
+ * alongside a foreground render. That includes a speculation for the very
+ * view asked for: finishing it on one slow thread would take longer than
+ * the foreground rendering it on all cores, and claim() never waits, so it
+ * can be called from the event dispatch thread. Requests may be made from
+ * any thread.
+ */
+public class SpeculativeRenderer {
+	/**
+	 * the thread that does the speculative work
+	 */
+	private ExecutorService worker;
+	/**
+	 * the speculations started since the last real request
+	 */
+	private List<Speculation> speculations;
+
+	public SpeculativeRenderer() {
+		worker = Executors.newSingleThreadExecutor(
+				new DaemonThreadFactory("speculative", Thread.MIN_PRIORITY));
+		speculations = new ArrayList<Speculation>();
+	}
+
+	/**
+	 * start rendering a view that has not been computed yet
+	 */
+	public void prerender(final double zoom, final double zoomStep,
+			final int xOffset, final int yOffset, final Formula formula) {
+		Main.log(SpeculativeRenderer.class.getSimpleName() + ".prerender() entered");
+
+		start(zoom, zoomStep, xOffset, yOffset, formula, new Callable<Rendered>() {
+			@Override
+			public Rendered call() {
+				ComplexSet set = new ComplexSet(zoom, zoomStep, xOffset, yOffset, formula);
+				return new Rendered(set, ComplexImage.imageOf(set));
+			}
+		});
+	}
+
+	/**
+	 * start building the bitmap of a view that has already been computed
+	 */
+	public void prerender(final ComplexSet set) {
+		Main.log(SpeculativeRenderer.class.getSimpleName() + ".prerender() entered");
+
+		start(set.getZoom(), set.getzoomStep(), set.getxOffset(), set.getyOffset(),
+				set.getFormula(), new Callable<Rendered>() {
+			@Override
+			public Rendered call() {
+				return new Rendered(set, ComplexImage.imageOf(set));
+			}
+		});
+	}
+
+	private synchronized void start(double zoom, double zoomStep, int xOffset, int yOffset,
+			Formula formula, Callable<Rendered> work) {
+		speculations.add(new Speculation(zoom, zoomStep, xOffset, yOffset, formula,
+				worker.submit(work)));
+	}
+
+	/**
+	 * a real request has arrived: cancel every speculation still running,
+	 * and hand over the one that matches it if it has already finished
+	 * @return the rendered view asked for, or null if it was not speculated
+	 * or is not finished yet
+	 */
+	public Rendered claim(double zoom, double zoomStep, int xOffset, int yOffset,
+			Formula formula) {
+		Main.log(SpeculativeRenderer.class.getSimpleName() + ".claim() entered");
+
+		Future<Rendered> match = null;
+		synchronized (this) {
+			for (Speculation s : speculations) {
+				if (match == null && s.future.isDone() && s.zoom == zoom
+						&& s.zoomStep == zoomStep && s.xOffset == xOffset
+						&& s.yOffset == yOffset && s.formula.equals(formula)) {
+					match = s.future;
+				} else {
+					s.future.cancel(true);
+				}
+			}
+			speculations.clear();
+		}
+		if (match == null) return null;
+
+		try {
+			Rendered r = match.get(); // done, so this does not wait
+			Main.log("speculative render used");
+			return r;
+		} catch (CancellationException e) {
+			return null;
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * drop every speculation, as when a gesture starts that none of them can
+	 * serve
+	 */
+	public synchronized void cancel() {
+		for (Iterator<Speculation> i = speculations.iterator(); i.hasNext();) {
+			i.next().future.cancel(true);
+			i.remove();
+		}
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * a finished speculation: the ComplexSet and the bitmap made from it
+	 */
+	public static final class Rendered {
+		private final ComplexSet set;
+		private final BufferedImage image;
+
+		Rendered(ComplexSet set, BufferedImage image) {
+			this.set = set;
+			this.image = image;
+		}
+
+		/**
+		 * @return the ComplexSet of the view
+		 */
+		public ComplexSet getSet() {
+			return set;
+		}
+
+		/**
+		 * @return the bitmap of the view
+		 */
+		public BufferedImage getImage() {
+			return image;
+		}
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * a view being rendered speculatively
+	 */
+	private static final class Speculation {
+		private final double zoom, zoomStep;
+		private final int xOffset, yOffset;
+		private final Formula formula;
+		private final Future<Rendered> future;
+
+		Speculation(double zoom, double zoomStep, int xOffset, int yOffset,
+				Formula formula, Future<Rendered> future) {
+			this.zoom = zoom;
+			this.zoomStep = zoomStep;
+			this.xOffset = xOffset;
+			this.yOffset = yOffset;
+			this.formula = formula;
+			this.future = future;
+		}
+	}
+}
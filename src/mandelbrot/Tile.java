@@ -0,0 +1,94 @@
+package mandelbrot;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * One finished rectangle of a render: where it lies in the view and the
+ * order of every pixel in it, or its distance from the set if the request
+ * asked for distances.
+ *
+ * <p>
+ * Part of the rendering library, which uses no AWT or Swing classes.
+ *
+ * @see Renderer
+ */
+public final class Tile {
+	private final int x, y, width, height;
+	private final int[] orders;
+	private final double[] distances;
+
+	Tile(int x, int y, int width, int height, int[] orders) {
+		this(x, y, width, height, orders, null);
+	}
+
+	Tile(int x, int y, int width, int height, int[] orders, double[] distances) {
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.orders = orders;
+		this.distances = distances;
+	}
+
+	/**
+	 * @return the column of the view where the tile's left edge lies
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * @return the row of the view where the tile's top edge lies
+	 */
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * @return the width in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the height in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the order of every pixel, row by row: column x of row y of
+	 * the tile is at index y * getWidth() + x, or null if the request asked
+	 * for distances. Not to be modified.
+	 */
+	public int[] getOrders() {
+		return orders;
+	}
+
+	/**
+	 * @return the order of the pixel at column x, row y of the tile
+	 */
+	public int getOrder(int x, int y) {
+		return orders[y * width + x];
+	}
+
+	/**
+	 * @return a lower bound on every pixel's distance from the set in
+	 * pixels, less than 0 inside it, in the same order as getOrders(); null
+	 * unless the request asked for distances. Not to be modified.
+	 * @see DistanceEstimator#shade(double)
+	 */
+	public double[] getDistances() {
+		return distances;
+	}
+
+	/**
+	 * @return the distance of the pixel at column x, row y of the tile
+	 */
+	public double getDistance(int x, int y) {
+		return distances[y * width + x];
+	}
+}
@@ -0,0 +1,242 @@
+package mandelbrot;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ * 
+ * <p>
+ * Renders a ComplexSet on all cores. The cost of a pixel varies by orders of
+ * magnitude: inside the set it runs to MAX_ITERATIONS, far outside it escapes
+ * in a step or two. Splitting the set evenly therefore leaves cores idle
+ * while one finishes an expensive strip.
+ * 
+ * <p>
+ * Instead the set is cut into square tiles and the cost of each is predicted
+ * from a few sample points: the previous frame's order at that point if the
+ * previous frame covered it, otherwise the kernel run on the point itself.
+ * Tiles are handed out most expensive first from a shared counter, so the
+ * cheap tiles fill in the gaps at the end (longest processing time first).
+ * Each render reports the parallel efficiency it achieved: the window shows
+ * it under the frame budget, and with -Dmandelbrot.stats=true it is logged
+ * to the mandelbrot.stats logger.
+ *
+ * <p>
+ * The helper threads come from the shared PriorityScheduler, ahead of any
+ * background work waiting there.
+ */
+public class TileScheduler {
+	/**
+	 * tiles are this many pixels on a side; COLS and ROWS are multiples of it
+	 */
+	public static final int TILE_SIZE = 40;
+	/**
+	 * each tile's cost is predicted from PROBE x PROBE sample points
+	 */
+	private static final int PROBE = 4;
+	/**
+	 * how many threads render, the caller included
+	 */
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+	/**
+	 * where each render's statistics are logged, if switched on
+	 */
+	private static final Logger STATS = Main.measurements("mandelbrot.stats");
+
+	private TileScheduler() {}
+
+	/**
+	 * fill a set's iteration buffer on all cores
+	 * @param set the set to fill
+	 * @param previous the frame shown before, or null
+	 * @return how the render went
+	 */
+	static RenderStats render(ComplexSet set, ComplexSet previous) {
+		Main.log(TileScheduler.class.getSimpleName() + ".render() entered");
+
+		PriorityScheduler scheduler = PriorityScheduler.shared();
+		scheduler.beginForeground();
+		try {
+			RenderStats stats = render(set, previous, scheduler);
+			STATS.info(stats.toString());
+			return stats;
+		} finally {
+			scheduler.endForeground();
+		}
+	}
+
+	private static RenderStats render(final ComplexSet set, ComplexSet previous,
+			PriorityScheduler scheduler) {
+		long start = System.nanoTime();
+		final Tile[] tiles = estimate(set, previous);
+		Arrays.sort(tiles);
+		long estimated = System.nanoTime();
+
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicLong busy = new AtomicLong();
+		final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+		final CountDownLatch helpers = new CountDownLatch(THREADS - 1);
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				long mine = 0;
+				try {
+					int i;
+					while ((i = next.getAndIncrement()) < tiles.length) {
+						long t0 = System.nanoTime();
+						tiles[i].fill(set);
+						mine += System.nanoTime() - t0;
+					}
+				} catch (RuntimeException e) {
+					failure.compareAndSet(null, e);
+					next.set(tiles.length);
+				} finally {
+					busy.addAndGet(mine);
+				}
+			}
+		};
+		for (int t = 1; t < THREADS; t++) {
+			final Runnable w = worker;
+			scheduler.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						w.run();
+					} finally {
+						helpers.countDown();
+					}
+				}
+			});
+		}
+		worker.run();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				helpers.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		if (failure.get() != null) throw failure.get();
+
+		long end = System.nanoTime();
+		return new RenderStats(tiles.length, THREADS, estimated - start, end - estimated,
+				busy.get());
+	}
+
+	/**
+	 * cut the set into tiles and predict what each will cost
+	 */
+	private static Tile[] estimate(ComplexSet set, ComplexSet previous) {
+		int across = ComplexSet.COLS / TILE_SIZE, down = ComplexSet.ROWS / TILE_SIZE;
+		Tile[] tiles = new Tile[across * down];
+		int spacing = TILE_SIZE / PROBE;
+		for (int ty = 0; ty < down; ty++) {
+			for (int tx = 0; tx < across; tx++) {
+				int x0 = tx * TILE_SIZE, y0 = ty * TILE_SIZE;
+				long cost = 0;
+				for (int py = 0; py < PROBE; py++) {
+					for (int px = 0; px < PROBE; px++) {
+						cost += predictOrder(set, previous, x0 + px * spacing + spacing / 2,
+								y0 + py * spacing + spacing / 2);
+					}
+				}
+				tiles[ty * across + tx] = new Tile(x0, y0, cost);
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * @return the order of the number at a pixel of set, read from the
+	 * previous frame when it covered that number, else computed
+	 */
+	private static int predictOrder(ComplexSet set, ComplexSet previous, int x, int y) {
+		double theReal = ComplexSet.realAt(x, set.getZoom(), set.getxOffset());
+		double theImaginary = ComplexSet.imaginaryAt(y, set.getZoom(), set.getyOffset());
+		if (previous != null && previous.getFormula().equals(set.getFormula())) {
+			int px = (int) Math.round(ComplexSet.columnOf(theReal, previous.getZoom(),
+					previous.getxOffset()));
+			int py = (int) Math.round(ComplexSet.rowOf(theImaginary, previous.getZoom(),
+					previous.getyOffset()));
+			if (px >= 0 && px < ComplexSet.COLS && py >= 0 && py < ComplexSet.ROWS)
+				return previous.getOrder(px, py);
+		}
+		return set.getFormula().computeOrder(theReal, theImaginary);
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * a square of the set and its predicted cost; sorts most expensive first
+	 */
+	private static final class Tile implements Comparable<Tile> {
+		private final int x0, y0;
+		private final long cost;
+
+		Tile(int x0, int y0, long cost) {
+			this.x0 = x0;
+			this.y0 = y0;
+			this.cost = cost;
+		}
+
+		void fill(ComplexSet set) {
+			for (int y = y0; y < y0 + TILE_SIZE; y++) {
+				set.fillRow(y, x0, x0 + TILE_SIZE);
+			}
+		}
+
+		@Override
+		public int compareTo(Tile other) {
+			return Long.compare(other.cost, cost);
+		}
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * what one parallel render cost and how well it used the cores
+	 */
+	public static final class RenderStats {
+		private final int tiles, threads;
+		private final long estimateNanos, renderNanos, busyNanos;
+
+		RenderStats(int tiles, int threads, long estimateNanos, long renderNanos,
+				long busyNanos) {
+			this.tiles = tiles;
+			this.threads = threads;
+			this.estimateNanos = estimateNanos;
+			this.renderNanos = renderNanos;
+			this.busyNanos = busyNanos;
+		}
+
+		/**
+		 * @return the fraction of the available thread time spent rendering
+		 * tiles, between 0 and 1
+		 */
+		public double getEfficiency() {
+			if (renderNanos == 0) return 1d;
+			return (double) busyNanos / ((double) renderNanos * threads);
+		}
+
+		/**
+		 * @return wall-clock time of the render, cost prediction included
+		 */
+		public long getElapsedNanos() {
+			return estimateNanos + renderNanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("rendered %d tiles on %d threads in %.1f ms "
+					+ "(%.1f ms predicting cost), parallel efficiency %.0f%%",
+					tiles, threads, getElapsedNanos() / 1e6, estimateNanos / 1e6,
+					100d * getEfficiency());
+		}
+	}
+}
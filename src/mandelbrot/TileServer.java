@@ -0,0 +1,487 @@
+package mandelbrot;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * A small HTTP server that lets the Mandelbrot set be browsed from a web page
+ * the way a map is browsed. Tiles are addressed slippy-map style as
+ * <code>/{z}/{x}/{y}.png</code>: at zoom level z the square of the complex
+ * plane spanning (-2.5,1.5) along the real axis and (-2i,2i) along the
+ * imaginary axis is cut into 2^z by 2^z tiles of 256 x 256 pixels, x counting
+ * to the right and y counting down. Tiles of a formula other than the
+ * Mandelbrot set are addressed as <code>/{formula}/{z}/{x}/{y}.png</code>,
+ * formula being a name from Formula.getName().
+ *
+ * <p>
+ * Tiles never change for a given address, so finished tiles are kept in an
+ * in-memory cache and carry an ETag that can be checked without rendering.
+ * Concurrent requests for the same tile share one computation. Requests are
+ * answered on a fixed pool, and tiles rendered on another, each behind a
+ * bounded queue: when either queue is full the request is answered with 503
+ * and a Retry-After rather than piling up work.
+ *
+ * <p>
+ * The page at / draws the tiles with Leaflet, which the browser loads from
+ * unpkg.com unless -Dmandelbrot.leaflet names another place holding
+ * leaflet.js and leaflet.css, e.g. a copy served alongside on the local
+ * network. The tiles themselves need nothing beyond this class.
+ */
+public class TileServer {
+	/**
+	 * tiles are this many pixels on a side
+	 */
+	public static final int TILE_SIZE = 256;
+	/**
+	 * port used when none is given on the command line
+	 */
+	public static final int DEFAULT_PORT = 8080;
+	/**
+	 * deepest zoom level served; beyond this a pixel is smaller than the
+	 * precision of a double
+	 */
+	public static final int MAX_ZOOM = 40;
+	/**
+	 * the square of the complex plane covered by the single tile at level 0
+	 */
+	private static final double WORLD_MIN_REAL = -2.5, WORLD_MAX_IMAGINARY = 2.0,
+			WORLD_SIZE = 4.0;
+	/**
+	 * how many encoded tiles the cache holds before dropping the least
+	 * recently used
+	 */
+	private static final int CACHE_TILES = 2048;
+	/**
+	 * how many tiles may wait for a render thread before new requests are
+	 * turned away
+	 */
+	private static final int QUEUE_CAPACITY = 64;
+	/**
+	 * how long a request waits for its tile before giving up
+	 */
+	private static final long RENDER_TIMEOUT_SECONDS = 30;
+	/**
+	 * threads that answer HTTP requests; they mostly wait on renders
+	 */
+	private static final int HANDLER_THREADS = 32;
+	/**
+	 * how many requests may wait for a handler thread before new requests
+	 * are turned away
+	 */
+	private static final int HANDLER_QUEUE_CAPACITY = 256;
+	/**
+	 * where the page loads Leaflet from unless -Dmandelbrot.leaflet says
+	 */
+	private static final String LEAFLET = "https://unpkg.com/leaflet@1.9.4/dist";
+	private static final Pattern TILE_PATH =
+			Pattern.compile("^(?:/([a-z0-9]{1,20}))?/(\\d{1,2})/(\\d{1,13})/(\\d{1,13})\\.png$");
+
+	private final HttpServer server;
+	private final ThreadPoolExecutor handlers, renderers;
+	/**
+	 * finished PNGs, least recently used first
+	 */
+	private final Map<TileKey, byte[]> cache;
+	/**
+	 * tiles being rendered right now, so later requests can join them
+	 */
+	private final ConcurrentHashMap<TileKey, CompletableFuture<byte[]>> inFlight;
+
+	/**
+	 * set up, but do not start, a server on the given port
+	 * @param port the TCP port to listen on
+	 * @throws IOException if the port cannot be bound
+	 */
+	public TileServer(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		handlers = new ThreadPoolExecutor(HANDLER_THREADS, HANDLER_THREADS, 0L,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(HANDLER_QUEUE_CAPACITY),
+				new DaemonThreadFactory("tile-http"), new ThreadPoolExecutor.AbortPolicy());
+		int cores = Runtime.getRuntime().availableProcessors();
+		renderers = new ThreadPoolExecutor(cores, cores, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+				new DaemonThreadFactory("tile-render"),
+				new ThreadPoolExecutor.AbortPolicy());
+		cache = new LinkedHashMap<TileKey, byte[]>(CACHE_TILES, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<TileKey, byte[]> eldest) {
+				return size() > CACHE_TILES;
+			}
+		};
+		inFlight = new ConcurrentHashMap<TileKey, CompletableFuture<byte[]>>();
+
+		// the server's own thread only hands each request to handlers
+		server.setExecutor(null);
+		server.createContext("/", new Handler());
+	}
+
+	/**
+	 * start answering requests
+	 */
+	public void start() {
+		Main.log(TileServer.class.getSimpleName() + ".start() entered");
+
+		server.start();
+	}
+
+	/**
+	 * stop answering requests and release the worker threads
+	 */
+	public void stop() {
+		Main.log(TileServer.class.getSimpleName() + ".stop() entered");
+
+		server.stop(0);
+		handlers.shutdownNow();
+		renderers.shutdownNow();
+	}
+
+	/**
+	 * find the PNG for a tile, either from the cache, by joining a render
+	 * already under way, or by queueing a new render
+	 * @param key the tile wanted
+	 * @return a future holding the encoded tile; it fails with a
+	 * RejectedExecutionException when the render queue is full
+	 */
+	private CompletableFuture<byte[]> tile(final TileKey key) {
+		byte[] png = cached(key);
+		if (png != null) return CompletableFuture.completedFuture(png);
+
+		final CompletableFuture<byte[]> created = new CompletableFuture<byte[]>();
+		CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, created);
+		if (existing != null) return existing;
+
+		// a render may have finished between the cache check and here
+		png = cached(key);
+		if (png != null) {
+			inFlight.remove(key, created);
+			created.complete(png);
+			return created;
+		}
+
+		try {
+			renderers.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						byte[] result = renderTile(key);
+						synchronized (cache) {
+							cache.put(key, result);
+						}
+						created.complete(result);
+					} catch (Throwable t) {
+						created.completeExceptionally(t);
+					} finally {
+						inFlight.remove(key, created);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			inFlight.remove(key, created);
+			created.completeExceptionally(e);
+		}
+		return created;
+	}
+
+	/**
+	 * @param key the tile wanted
+	 * @return the cached PNG for the tile, or null
+	 */
+	private byte[] cached(TileKey key) {
+		synchronized (cache) {
+			return cache.get(key);
+		}
+	}
+
+	/**
+	 * run the escape-time kernel over one tile and encode it as a PNG
+	 * @param key the tile to render
+	 * @return the PNG bytes
+	 * @throws IOException if the image cannot be encoded
+	 */
+	private static byte[] renderTile(TileKey key) throws IOException {
+		Main.log(TileServer.class.getSimpleName() + ".renderTile() entered");
+
+		double size = Math.scalb(WORLD_SIZE, -key.z);
+		double pixel = size / TILE_SIZE;
+		double minReal = WORLD_MIN_REAL + key.x * size;
+		double maxImaginary = WORLD_MAX_IMAGINARY - key.y * size;
+
+		int[] rgb = new int[TILE_SIZE * TILE_SIZE];
+		for (int y = 0; y < TILE_SIZE; y++) {
+			key.formula.fillRow(rgb, y * TILE_SIZE, TILE_SIZE, minReal + 0.5d * pixel,
+					pixel, maxImaginary - (y + 0.5d) * pixel);
+		}
+		for (int i = 0; i < rgb.length; i++) {
+			rgb[i] = ComplexValue.colorOf(rgb[i]);
+		}
+
+		BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE,
+				BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, TILE_SIZE, TILE_SIZE, rgb, 0, TILE_SIZE);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * answers every request made to the server
+	 */
+	private class Handler implements HttpHandler {
+		/**
+		 * runs on the server's thread: queue the request for a handler
+		 * thread, or turn it away at once if too many are waiting
+		 */
+		@Override
+		public void handle(final HttpExchange exchange) throws IOException {
+			try {
+				handlers.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							answer(exchange);
+						} catch (IOException e) {
+							Main.log("Tile request abandoned: " + e);
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				try {
+					exchange.getResponseHeaders().set("Retry-After", "1");
+					send(exchange, 503, null, null);
+				} finally {
+					exchange.close();
+				}
+			}
+		}
+
+		/**
+		 * runs on a handler thread: answer a request and close it
+		 */
+		private void answer(HttpExchange exchange) throws IOException {
+			try {
+				String method = exchange.getRequestMethod();
+				if (!method.equals("GET") && !method.equals("HEAD")) {
+					exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+					send(exchange, 405, null, null);
+					return;
+				}
+
+				String path = exchange.getRequestURI().getPath();
+				if (path.equals("/") || path.equals("/index.html")) {
+					send(exchange, 200, "text/html; charset=utf-8",
+							INDEX_PAGE.getBytes(StandardCharsets.UTF_8));
+					return;
+				}
+
+				TileKey key = TileKey.parse(path);
+				if (key == null) {
+					send(exchange, 404, null, null);
+					return;
+				}
+
+				String etag = key.etag();
+				exchange.getResponseHeaders().set("ETag", etag);
+				exchange.getResponseHeaders().set("Cache-Control", "public, max-age=86400");
+				if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+					send(exchange, 304, null, null);
+					return;
+				}
+
+				byte[] png;
+				try {
+					png = tile(key).get(RENDER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof RejectedExecutionException) {
+						exchange.getResponseHeaders().set("Retry-After", "1");
+						send(exchange, 503, null, null);
+					} else {
+						e.printStackTrace();
+						send(exchange, 500, null, null);
+					}
+					return;
+				} catch (TimeoutException e) {
+					exchange.getResponseHeaders().set("Retry-After", "1");
+					send(exchange, 503, null, null);
+					return;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					send(exchange, 503, null, null);
+					return;
+				}
+				send(exchange, 200, "image/png", png);
+			} finally {
+				exchange.close();
+			}
+		}
+
+		/**
+		 * @param header the If-None-Match header, may be null
+		 * @param etag the ETag of the tile asked for
+		 * @return true if the client already holds this tile
+		 */
+		private boolean matches(String header, String etag) {
+			if (header == null) return false;
+			for (String candidate : header.split(",")) {
+				String tag = candidate.trim();
+				if (tag.startsWith("W/")) tag = tag.substring(2);
+				if (tag.equals("*") || tag.equals(etag)) return true;
+			}
+			return false;
+		}
+
+		/**
+		 * write the status line, headers and, except for HEAD, the body
+		 */
+		private void send(HttpExchange exchange, int status, String type,
+				byte[] body) throws IOException {
+			if (type != null) exchange.getResponseHeaders().set("Content-Type", type);
+			boolean head = exchange.getRequestMethod().equals("HEAD");
+			if (body == null || head || status == 304) {
+				exchange.sendResponseHeaders(status, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(status, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+	}
+
+	/**
+	 * @author John Bannister <john_bannister@my.uri.edu>
+	 * the address of one tile
+	 */
+	private static final class TileKey {
+		private final Formula formula;
+		private final int z;
+		private final long x, y;
+
+		private TileKey(Formula formula, int z, long x, long y) {
+			this.formula = formula;
+			this.z = z;
+			this.x = x;
+			this.y = y;
+		}
+
+		/**
+		 * @param path a request path such as /3/2/5.png or /tricorn/3/2/5.png
+		 * @return the tile the path names, or null if it names no tile
+		 */
+		static TileKey parse(String path) {
+			Matcher m = TILE_PATH.matcher(path);
+			if (!m.matches()) return null;
+			Formula formula = m.group(1) == null ? Formula.MANDELBROT
+					: Formula.forName(m.group(1));
+			if (formula == null) return null;
+			int z = Integer.parseInt(m.group(2));
+			long x = Long.parseLong(m.group(3));
+			long y = Long.parseLong(m.group(4));
+			if (z > MAX_ZOOM) return null;
+			long tiles = 1L << z;
+			if (x >= tiles || y >= tiles) return null;
+			return new TileKey(formula, z, x, y);
+		}
+
+		/**
+		 * a tile's pixels depend only on its address and the kernel, so the
+		 * tag can be given out without rendering anything
+		 * @return the quoted ETag for this tile
+		 */
+		String etag() {
+			return "\"" + formula.getName() + "-" + z + "-" + x + "-" + y + "-"
+					+ ComplexValue.MAX_ITERATIONS + "\"";
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof TileKey)) return false;
+			TileKey other = (TileKey) o;
+			return formula.equals(other.formula) && z == other.z && x == other.x
+					&& y == other.y;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (31 * (31 * (31 * formula.hashCode() + z) + (x ^ (x >>> 32)))
+					+ (y ^ (y >>> 32)));
+		}
+	}
+
+	/**
+	 * a bare page that shows the tiles with Leaflet, one layer per formula
+	 */
+	private static final String INDEX_PAGE = "<!DOCTYPE html>\n"
+			+ "<html><head><title>Mandelbrot Set</title>\n"
+			+ "<link rel=\"stylesheet\" href=\"" + leaflet() + "/leaflet.css\"/>\n"
+			+ "<script src=\"" + leaflet() + "/leaflet.js\"></script>\n"
+			+ "<style>html,body,#map{height:100%;margin:0;background:#000}</style>\n"
+			+ "</head><body><div id=\"map\"></div><script>\n"
+			+ "var map = L.map('map', {crs: L.CRS.Simple, minZoom: 0, maxZoom: " + MAX_ZOOM + "});\n"
+			+ "var layers = {};\n"
+			+ "[" + formulaList() + "].forEach(function (f) {\n"
+			+ "  layers[f[1]] = L.tileLayer('/' + f[0] + '/{z}/{x}/{y}.png', {tileSize: " + TILE_SIZE + ",\n"
+			+ "    noWrap: true, bounds: [[-" + TILE_SIZE + ", 0], [0, " + TILE_SIZE + "]], maxZoom: " + MAX_ZOOM + "});\n"
+			+ "});\n"
+			+ "layers['" + Formula.MANDELBROT + "'].addTo(map);\n"
+			+ "L.control.layers(layers).addTo(map);\n"
+			+ "map.setView([-" + (TILE_SIZE / 2) + ", " + (TILE_SIZE / 2) + "], 1);\n"
+			+ "</script></body></html>\n";
+
+	/**
+	 * @return where the page loads Leaflet from, without a trailing slash
+	 */
+	private static String leaflet() {
+		String base = System.getProperty("mandelbrot.leaflet", LEAFLET);
+		return base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+	}
+
+	/**
+	 * @return the standard formulas as JavaScript [name, label] pairs
+	 */
+	private static String formulaList() {
+		StringBuilder list = new StringBuilder();
+		for (Formula f : Formula.standard()) {
+			if (list.length() > 0) list.append(", ");
+			list.append("['").append(f.getName()).append("', '").append(f).append("']");
+		}
+		return list.toString();
+	}
+
+	/**
+	 * Start a tile server.
+	 *
+	 * @param args optionally, the port to listen on
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		new TileServer(port).start();
+		System.out.println("Serving Mandelbrot tiles on http://localhost:" + port + "/");
+	}
+}
@@ -0,0 +1,140 @@
+package mandelbrot;
+
+/**
+ * @author John Bannister <john_bannister@my.uri.edu>
+ *
+ * <p>
+ * An immutable description of a rectangular view of the complex plane: the
+ * complex number at its center, the size of one pixel in the plane, and its
+ * width and height in pixels. The imaginary axis points up, so row 0 is the
+ * top of the view.
+ *
+ * <p>
+ * Part of the rendering library, which uses no AWT or Swing classes.
+ *
+ * @see Renderer
+ */
+public final class Viewport {
+	private final double centerReal, centerImaginary, pixelSize;
+	private final int width, height;
+
+	/**
+	 * @param centerReal the real part of the number at the center
+	 * @param centerImaginary the imaginary part of the number at the center
+	 * @param pixelSize the width and height of one pixel in the plane
+	 * @param width the width in pixels
+	 * @param height the height in pixels
+	 */
+	public Viewport(double centerReal, double centerImaginary, double pixelSize,
+			int width, int height) {
+		if (!(pixelSize > 0) || Double.isInfinite(pixelSize))
+			throw new IllegalArgumentException("pixel size must be positive: " + pixelSize);
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("size must be positive: " + width + " x " + height);
+		this.centerReal = centerReal;
+		this.centerImaginary = centerImaginary;
+		this.pixelSize = pixelSize;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * @return the real value at the center of column x
+	 */
+	public double realAt(int x) {
+		return centerReal + (x + 0.5d - width / 2d) * pixelSize;
+	}
+
+	/**
+	 * @return the imaginary value at the center of row y
+	 */
+	public double imaginaryAt(int y) {
+		return centerImaginary - (y + 0.5d - height / 2d) * pixelSize;
+	}
+
+	/**
+	 * @return the same view moved to a new center
+	 */
+	public Viewport withCenter(double real, double imaginary) {
+		return new Viewport(real, imaginary, pixelSize, width, height);
+	}
+
+	/**
+	 * @param factor how many times larger things should appear
+	 * @return the same view magnified about its center
+	 */
+	public Viewport zoomedBy(double factor) {
+		return new Viewport(centerReal, centerImaginary, pixelSize / factor, width, height);
+	}
+
+	/**
+	 * @return the same part of the plane at a new size in pixels, the
+	 * larger of its sides filling the old view's
+	 */
+	public Viewport withSize(int newWidth, int newHeight) {
+		double scale = Math.max((double) width / newWidth, (double) height / newHeight);
+		return new Viewport(centerReal, centerImaginary, pixelSize * scale, newWidth, newHeight);
+	}
+
+	/**
+	 * @return the real part of the number at the center
+	 */
+	public double getCenterReal() {
+		return centerReal;
+	}
+
+	/**
+	 * @return the imaginary part of the number at the center
+	 */
+	public double getCenterImaginary() {
+		return centerImaginary;
+	}
+
+	/**
+	 * @return the width and height of one pixel in the plane
+	 */
+	public double getPixelSize() {
+		return pixelSize;
+	}
+
+	/**
+	 * @return the width in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the height in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Viewport)) return false;
+		Viewport other = (Viewport) o;
+		return Double.compare(centerReal, other.centerReal) == 0
+				&& Double.compare(centerImaginary, other.centerImaginary) == 0
+				&& Double.compare(pixelSize, other.pixelSize) == 0
+				&& width == other.width && height == other.height;
+	}
+
+	@Override
+	public int hashCode() {
+		long h = Double.doubleToLongBits(centerReal);
+		h = 31 * h + Double.doubleToLongBits(centerImaginary);
+		h = 31 * h + Double.doubleToLongBits(pixelSize);
+		h = 31 * h + width;
+		h = 31 * h + height;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return "Viewport[" + centerReal + (centerImaginary < 0 ? " - " : " + ")
+				+ Math.abs(centerImaginary) + "i, pixel " + pixelSize + ", "
+				+ width + " x " + height + "]";
+	}
+}